@@ -26,6 +26,8 @@ import com.rometools.rome.io.SyndFeedInput;
 import java.io.ByteArrayInputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -47,6 +49,7 @@ import org.apache.stormcrawler.parse.Outlink;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.parse.StreamingFeedParser;
 import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.HttpHeaders;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
@@ -54,10 +57,23 @@ import org.apache.stormcrawler.util.ConfUtils;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
 
-/** Extracts URLs from feeds */
+/**
+ * Extracts URLs from feeds.
+ *
+ * <p>With <i>feed.streaming</i>, RSS and Atom feeds are read with a {@link StreamingFeedParser}
+ * which extracts only the fields used here instead of building a ROME SyndFeed. ROME is still used
+ * for the documents it does not recognise.
+ *
+ * <p>With <i>feed.skip.unchanged</i>, the date at which a feed was processed is stored in its
+ * metadata under <i>feed.lastProcessed</i>, which must be persisted with <i>metadata.persist</i>.
+ * When the feed is fetched again, the entries published before that date are skipped. With the
+ * streaming parser, the parsing stops at the first of these entries, which assumes that the feed
+ * lists the most recent entries first, as is usually the case.
+ */
 public class FeedParserBolt extends StatusEmitterBolt {
 
     public static final String isFeedKey = "isFeed";
+    public static final String lastProcessedKey = "feed.lastProcessed";
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(FeedParserBolt.class);
 
@@ -68,6 +84,11 @@ public class FeedParserBolt extends StatusEmitterBolt {
 
     private String protocolMDprefix;
 
+    private StreamingFeedParser streamingParser;
+
+    /** Whether to skip the entries published before the feed was last processed */
+    private boolean skipUnchanged = false;
+
     @Override
     public void execute(Tuple tuple) {
         Metadata metadata = (Metadata) tuple.getValueByField("metadata");
@@ -114,9 +135,22 @@ public class FeedParserBolt extends StatusEmitterBolt {
             metadata.setValue(isFeedKey, "true");
         }
 
-        List<Outlink> outlinks;
+        // stored only if the feed is processed successfully
+        final String processingTime = Instant.now().toString();
+        Date lastProcessed = null;
+        if (skipUnchanged) {
+            lastProcessed = getLastProcessed(url, metadata);
+        }
+
+        List<Outlink> outlinks = null;
         try {
-            outlinks = parseFeed(url, content, metadata);
+            if (streamingParser != null) {
+                outlinks = parseFeedStreaming(url, content, metadata, lastProcessed);
+            }
+            // not recognised by the streaming parser
+            if (outlinks == null) {
+                outlinks = parseFeed(url, content, metadata, lastProcessed);
+            }
         } catch (Exception e) {
             // exception while parsing the feed
             String errorMessage = "Exception while parsing " + url + ": " + e;
@@ -156,6 +190,10 @@ public class FeedParserBolt extends StatusEmitterBolt {
 
         LOG.info("Feed parser done {}", url);
 
+        if (skipUnchanged) {
+            metadata.setValue(lastProcessedKey, processingTime);
+        }
+
         // marking the main URL as successfully fetched
         // regardless of whether we got a parse exception or not
         collector.emit(
@@ -163,7 +201,8 @@ public class FeedParserBolt extends StatusEmitterBolt {
         this.collector.ack(tuple);
     }
 
-    private List<Outlink> parseFeed(String url, byte[] content, Metadata parentMetadata)
+    private List<Outlink> parseFeed(
+            String url, byte[] content, Metadata parentMetadata, Date lastProcessed)
             throws Exception {
         List<Outlink> links = new ArrayList<>();
 
@@ -174,54 +213,154 @@ public class FeedParserBolt extends StatusEmitterBolt {
         }
 
         URL sURL = new URL(url);
+        Date threshold = getPublishedThreshold();
 
         List<SyndEntry> entries = feed.getEntries();
         for (SyndEntry entry : entries) {
-            String targetURL = entry.getLink();
-            // targetURL can be null?!?
-            // e.g. feed does not use links but guid
-            if (StringUtils.isBlank(targetURL)) {
-                targetURL = entry.getUri();
-                if (StringUtils.isBlank(targetURL)) {
-                    continue;
-                }
+            Date publishedDate = entry.getPublishedDate();
+            if (isUnchanged(entry.getLink(), publishedDate, lastProcessed)) {
+                continue;
             }
-            Outlink newLink = filterOutlink(sURL, targetURL, parentMetadata);
-            if (newLink == null) continue;
-
-            String title = entry.getTitle();
-            if (StringUtils.isNotBlank(title)) {
-                newLink.getMetadata().setValue("feed.title", title.trim());
+            SyndContent description = entry.getDescription();
+            Outlink newLink =
+                    toOutlink(
+                            sURL,
+                            entry.getLink(),
+                            entry.getUri(),
+                            entry.getTitle(),
+                            publishedDate,
+                            description != null ? description.getValue() : null,
+                            parentMetadata,
+                            threshold);
+            if (newLink != null) {
+                links.add(newLink);
             }
+        }
 
-            Date publishedDate = entry.getPublishedDate();
-            if (publishedDate != null) {
-                // filter based on the published date
-                if (filterHoursSincePub != -1) {
-                    Calendar rightNow =
-                            Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ROOT);
-                    rightNow.add(Calendar.HOUR, -filterHoursSincePub);
-                    if (publishedDate.before(rightNow.getTime())) {
-                        LOG.info(
-                                "{} has a published date {} which is more than {} hours old",
-                                targetURL,
-                                publishedDate,
-                                filterHoursSincePub);
-                        continue;
-                    }
-                }
-                newLink.getMetadata().setValue("feed.publishedDate", publishedDate.toString());
+        return links;
+    }
+
+    /**
+     * Parses the feed with the streaming parser, stops at the first entry published before the feed
+     * was last processed.
+     *
+     * @return the outlinks or null if the content is not an RSS or Atom feed
+     */
+    private List<Outlink> parseFeedStreaming(
+            String url, byte[] content, Metadata parentMetadata, Date lastProcessed)
+            throws Exception {
+        final List<Outlink> links = new ArrayList<>();
+        final URL sURL = new URL(url);
+        final Date threshold = getPublishedThreshold();
+
+        boolean parsed =
+                streamingParser.parse(
+                        content,
+                        entry -> {
+                            if (isUnchanged(
+                                    entry.getLink(), entry.getPublishedDate(), lastProcessed)) {
+                                // the following entries are older
+                                return false;
+                            }
+                            Outlink newLink =
+                                    toOutlink(
+                                            sURL,
+                                            entry.getLink(),
+                                            entry.getUri(),
+                                            entry.getTitle(),
+                                            entry.getPublishedDate(),
+                                            entry.getDescription(),
+                                            parentMetadata,
+                                            threshold);
+                            if (newLink != null) {
+                                links.add(newLink);
+                            }
+                            return true;
+                        });
+
+        return parsed ? links : null;
+    }
+
+    /**
+     * Filters and builds the outlink for an entry of the feed.
+     *
+     * @return the outlink or null if it was filtered
+     */
+    private Outlink toOutlink(
+            URL sURL,
+            String targetURL,
+            String uri,
+            String title,
+            Date publishedDate,
+            String description,
+            Metadata parentMetadata,
+            Date threshold) {
+        // targetURL can be null?!?
+        // e.g. feed does not use links but guid
+        if (StringUtils.isBlank(targetURL)) {
+            targetURL = uri;
+            if (StringUtils.isBlank(targetURL)) {
+                return null;
             }
+        }
+        Outlink newLink = filterOutlink(sURL, targetURL, parentMetadata);
+        if (newLink == null) return null;
 
-            SyndContent description = entry.getDescription();
-            if (description != null && StringUtils.isNotBlank(description.getValue())) {
-                newLink.getMetadata().setValue("feed.description", description.getValue());
+        if (StringUtils.isNotBlank(title)) {
+            newLink.getMetadata().setValue("feed.title", title.trim());
+        }
+
+        if (publishedDate != null) {
+            // filter based on the published date
+            if (threshold != null && publishedDate.before(threshold)) {
+                LOG.info(
+                        "{} has a published date {} which is more than {} hours old",
+                        targetURL,
+                        publishedDate,
+                        filterHoursSincePub);
+                return null;
             }
+            newLink.getMetadata().setValue("feed.publishedDate", publishedDate.toString());
+        }
 
-            links.add(newLink);
+        if (StringUtils.isNotBlank(description)) {
+            newLink.getMetadata().setValue("feed.description", description);
         }
 
-        return links;
+        return newLink;
+    }
+
+    /** Date before which the entries are skipped or null if they should not be filtered */
+    private Date getPublishedThreshold() {
+        if (filterHoursSincePub == -1) {
+            return null;
+        }
+        Calendar rightNow = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ROOT);
+        rightNow.add(Calendar.HOUR, -filterHoursSincePub);
+        return rightNow.getTime();
+    }
+
+    /** Whether an entry was published before the feed was last processed */
+    private boolean isUnchanged(String target, Date publishedDate, Date lastProcessed) {
+        if (lastProcessed == null || publishedDate == null || !publishedDate.before(lastProcessed)) {
+            return false;
+        }
+        LOG.debug("{} published before {}", target, lastProcessed);
+        return true;
+    }
+
+    /** Date at which the feed was last processed or null if unknown */
+    private Date getLastProcessed(String url, Metadata metadata) {
+        String value = metadata.getFirstValue(lastProcessedKey);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            LOG.warn("Invalid value {} for {} in {}", value, lastProcessedKey, url);
+            return null;
+        }
     }
 
     @Override
@@ -231,6 +370,10 @@ public class FeedParserBolt extends StatusEmitterBolt {
         sniffWhenNoMDKey = ConfUtils.getBoolean(stormConf, "feed.sniffContent", false);
         filterHoursSincePub = ConfUtils.getInt(stormConf, "feed.filter.hours.since.published", -1);
         parseFilters = ParseFilters.fromConf(stormConf);
+        if (ConfUtils.getBoolean(stormConf, "feed.streaming", false)) {
+            streamingParser = new StreamingFeedParser();
+        }
+        skipUnchanged = ConfUtils.getBoolean(stormConf, "feed.skip.unchanged", false);
         protocolMDprefix =
                 ConfUtils.getString(stormConf, ProtocolResponse.PROTOCOL_MD_PREFIX_PARAM, "");
     }
@@ -714,10 +714,7 @@ public class FetcherBolt extends StatusEmitterBolt {
                             collector.emit(Constants.StatusStreamName, fit.t, tupleToSend);
                         } else {
                             // send content for parsing
-                            collector.emit(
-                                    Utils.DEFAULT_STREAM_ID,
-                                    fit.t,
-                                    new Values(fit.url, response.getContent(), mergedMD));
+                            emitFetched(fit.t, fit.url, response.getContent(), mergedMD);
                         }
                     } else if (status.equals(Status.REDIRECTION)) {
 
@@ -791,6 +788,14 @@ public class FetcherBolt extends StatusEmitterBolt {
         }
     }
 
+    /**
+     * Sends a document which has been fetched successfully to the default stream. Called by the
+     * fetching threads, before the input tuple gets acked.
+     */
+    protected void emitFetched(Tuple input, String url, byte[] content, Metadata metadata) {
+        collector.emit(Utils.DEFAULT_STREAM_ID, input, new Values(url, content, metadata));
+    }
+
     private void checkConfiguration(Config stormConf) {
 
         // ensure that a value has been set for the agent name and that that
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.bolt;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.task.IOutputCollector;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.util.ConfUtils;
+
+/**
+ * Fetches the URLs like the {@link FetcherBolt} then parses the documents with a {@link
+ * JSoupParserBolt} within the fetching threads, so that the binary content of the pages does not
+ * have to be sent to another bolt. Emits the same tuples as the JSoupParserBolt, without the binary
+ * content unless <i>fetcherparser.emit.content</i> is set to true. Documents which are not HTML and
+ * are passed on by the parser (see <i>jsoup.treat.non.html.as.error</i>) as well as the sitemaps
+ * identified as such in the metadata keep their content so that they can be handled downstream.
+ *
+ * <p>The parse filters, JSoup filters and URL filters are shared by all the fetching threads and
+ * must be thread safe.
+ *
+ * @since 3.1
+ */
+public class FetcherParserBolt extends FetcherBolt {
+
+    private JSoupParserBolt parser;
+
+    /** Passes on what the parser emits but leaves the acking to the fetching threads */
+    private OutputCollector parserCollector;
+
+    @Override
+    public void prepare(
+            Map<String, Object> stormConf, TopologyContext context, OutputCollector collector) {
+
+        super.prepare(stormConf, context, collector);
+
+        Map<String, Object> parserConf = new HashMap<>(stormConf);
+        // the fetching threads do the parsing
+        parserConf.put("jsoup.threads.number", 1);
+        parserConf.put(
+                "jsoup.emit.content",
+                ConfUtils.getBoolean(stormConf, "fetcherparser.emit.content", false));
+
+        parserCollector = new OutputCollector(new EmitOnlyOutputCollector(collector));
+
+        parser = new JSoupParserBolt();
+        parser.prepare(parserConf, context, parserCollector);
+    }
+
+    @Override
+    protected void emitFetched(Tuple input, String url, byte[] content, Metadata metadata) {
+        // sitemaps are left to the SiteMapParserBolt
+        if (Boolean.parseBoolean(metadata.getFirstValue(SiteMapParserBolt.isSitemapKey))) {
+            collector.emit(Utils.DEFAULT_STREAM_ID, input, new Values(url, content, metadata, ""));
+            return;
+        }
+        // the input tuple gets acked by the fetching thread
+        parser.parse(input, url, content, metadata, parserCollector);
+    }
+
+    /**
+     * Delegates the emissions to the collector of the bolt but ignores the acks and fails, as the
+     * parser would otherwise ack the input tuple a second time.
+     */
+    private static final class EmitOnlyOutputCollector implements IOutputCollector {
+
+        private final OutputCollector delegate;
+
+        EmitOnlyOutputCollector(OutputCollector delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+            return delegate.emit(streamId, anchors, tuple);
+        }
+
+        @Override
+        public void emitDirect(
+                int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+            delegate.emitDirect(taskId, streamId, anchors, tuple);
+        }
+
+        @Override
+        public void ack(Tuple input) {}
+
+        @Override
+        public void fail(Tuple input) {}
+
+        @Override
+        public void resetTimeout(Tuple input) {
+            delegate.resetTimeout(input);
+        }
+
+        @Override
+        public void reportError(Throwable error) {
+            delegate.reportError(error);
+        }
+
+        @Override
+        public void flush() {
+            delegate.flush();
+        }
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        // same as the JSoupParserBolt
+        declarer.declareStream(
+                org.apache.stormcrawler.Constants.StatusStreamName,
+                new Fields("url", "metadata", "status"));
+        declarer.declare(new Fields("url", "content", "metadata", "text"));
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        if (parser != null) {
+            parser.cleanup();
+        }
+    }
+}
@@ -25,19 +25,33 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.apache.commons.lang.StringUtils;
+import org.apache.storm.Config;
 import org.apache.storm.metric.api.MultiCountMetric;
+import org.apache.storm.task.IOutputCollector;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.DocumentFragmentBuilder;
@@ -48,12 +62,18 @@ import org.apache.stormcrawler.parse.ParseData;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.parse.ParsingBudget;
+import org.apache.stormcrawler.parse.ParsingBudget.Breach;
+import org.apache.stormcrawler.parse.ParsingBudget.BudgetReader;
 import org.apache.stormcrawler.parse.TextExtractor;
+import org.apache.stormcrawler.parse.filter.MD5SignatureParseFilter;
 import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.HttpHeaders;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
 import org.apache.stormcrawler.util.CharsetIdentification;
+import org.apache.stormcrawler.util.ConcurrentMultiCountMetric;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.MimeTypeIdentification;
 import org.apache.stormcrawler.util.RefreshTag;
 import org.apache.stormcrawler.util.RobotsTags;
 import org.apache.stormcrawler.util.URLUtil;
@@ -78,6 +98,8 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(JSoupParserBolt.class);
 
+    private static final byte[] NO_CONTENT = new byte[0];
+
     private MultiCountMetric eventCounter;
 
     private ParseFilter parseFilters = null;
@@ -88,6 +110,12 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     private boolean detectMimeType = true;
 
+    /**
+     * Trust the content type from the server if it is confirmed by the first bytes of the content
+     * and use Tika only otherwise
+     */
+    private boolean fastMimeTypeDetection = true;
+
     private boolean trackAnchors = true;
 
     private boolean emitOutlinks = true;
@@ -111,6 +139,8 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     private TextExtractor textExtractor;
 
+    private ParsingBudget parsingBudget;
+
     private String protocolMDprefix;
 
     private boolean robotsHeaderSkip;
@@ -121,19 +151,70 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     private boolean ignoreMetaRedirections;
 
+    /** Whether to emit the binary content of the documents parsed or an empty array */
+    private boolean emitContent = true;
+
+    /**
+     * Metadata key holding the signature of the content from the previous fetch, set to activate
+     * the skipping of unchanged documents
+     */
+    private String unchangedSignatureKey;
+
+    /** Hash function used for the signature of the content */
+    private String unchangedSignatureHash;
+
+    /** Metadata key set to the previous signature when a document is unchanged */
+    private String unchangedSignatureCopyKey;
+
+    /** Pool of threads parsing the documents or null if they are parsed by the executor thread */
+    private ExecutorService parsingPool;
+
+    /** Max number of documents being parsed or waiting to be emitted */
+    private int maxInFlight;
+
+    /** Documents being parsed, in the order in which they were received */
+    private final Deque<Future<DeferredOutputCollector>> inFlight = new ArrayDeque<>();
+
     @Override
     public void prepare(
             Map<String, Object> conf, TopologyContext context, OutputCollector collector) {
 
         super.prepare(conf, context, collector);
 
+        // the counters can get updated by parsing or fetching threads
         eventCounter =
-                context.registerMetric(this.getClass().getSimpleName(), new MultiCountMetric(), 10);
+                context.registerMetric(
+                        this.getClass().getSimpleName(), new ConcurrentMultiCountMetric(), 10);
 
         parseFilters = ParseFilters.fromConf(conf);
 
         jsoupFilters = JSoupFilters.fromConf(conf);
 
+        int numThreads = ConfUtils.getInt(conf, "jsoup.threads.number", 1);
+
+        if (numThreads > 1 && !areFiltersThreadSafe()) {
+            LOG.warn(
+                    "jsoup.threads.number set to {} but the filters are not all thread safe,"
+                            + " parsing with a single thread",
+                    numThreads);
+            numThreads = 1;
+        }
+
+        if (numThreads > 1) {
+            maxInFlight = ConfUtils.getInt(conf, "jsoup.max.inflight", numThreads * 2);
+            final String prefix = "JSoupParser #" + context.getThisTaskId() + " - ";
+            final AtomicInteger threadNum = new AtomicInteger();
+            parsingPool =
+                    Executors.newFixedThreadPool(
+                            numThreads,
+                            r -> {
+                                Thread t = new Thread(r, prefix + threadNum.getAndIncrement());
+                                t.setDaemon(true);
+                                return t;
+                            });
+            context.registerMetric("parsing_inflight", () -> inFlight.size(), 10);
+        }
+
         emitOutlinks = ConfUtils.getBoolean(conf, "parser.emitOutlinks", true);
 
         trackAnchors = ConfUtils.getBoolean(conf, "track.anchors", true);
@@ -145,6 +226,8 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
         detectMimeType = ConfUtils.getBoolean(conf, "detect.mimetype", true);
 
+        fastMimeTypeDetection = ConfUtils.getBoolean(conf, "detect.mimetype.fast", true);
+
         maxLengthCharsetDetection = ConfUtils.getInt(conf, "detect.charset.maxlength", -1);
 
         fastCharsetDetection = ConfUtils.getBoolean(conf, "detect.charset.fast", false);
@@ -161,14 +244,127 @@ public class JSoupParserBolt extends StatusEmitterBolt {
                 ConfUtils.getBoolean(conf, "jsoup.ignore.meta.redirections", false);
 
         textExtractor = new TextExtractor(conf);
+
+        emitContent = ConfUtils.getBoolean(conf, "jsoup.emit.content", true);
+
+        parsingBudget = new ParsingBudget(conf);
+
+        if (ConfUtils.getBoolean(conf, "jsoup.skip.unchanged", false)) {
+            unchangedSignatureKey =
+                    ConfUtils.getString(conf, "jsoup.skip.unchanged.key", "signature");
+            unchangedSignatureCopyKey =
+                    ConfUtils.getString(conf, "jsoup.skip.unchanged.key.copy", "signatureOld");
+            unchangedSignatureHash =
+                    ConfUtils.getString(conf, "jsoup.skip.unchanged.hash", "md5")
+                            .toLowerCase(Locale.ROOT);
+            // fail early if not supported
+            MD5SignatureParseFilter.hash(unchangedSignatureHash, NO_CONTENT);
+        }
+    }
+
+    /** Whether the parse, JSoup and URL filters can be used by several parsing threads */
+    private boolean areFiltersThreadSafe() {
+        boolean threadSafe = true;
+        if (!parseFilters.isThreadSafe()) {
+            LOG.warn("Not all the parse filters are thread safe");
+            threadSafe = false;
+        }
+        if (!jsoupFilters.isThreadSafe()) {
+            LOG.warn("Not all the JSoup filters are thread safe");
+            threadSafe = false;
+        }
+        if (!getURLFilters().isThreadSafe()) {
+            LOG.warn("Not all the URL filters are thread safe");
+            threadSafe = false;
+        }
+        return threadSafe;
+    }
+
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        // used for emitting the last documents parsed by the threads
+        Config conf = new Config();
+        conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, 1);
+        return conf;
     }
 
     @Override
     public void execute(Tuple tuple) {
 
+        if (TupleUtils.isTick(tuple)) {
+            if (parsingPool != null && !inFlight.isEmpty()) {
+                emitParsed();
+            }
+            return;
+        }
+
+        // parse on the executor thread
+        if (parsingPool == null) {
+            parse(tuple, collector);
+            return;
+        }
+
+        inFlight.add(
+                parsingPool.submit(
+                        () -> {
+                            final DeferredOutputCollector output = new DeferredOutputCollector();
+                            parse(tuple, new OutputCollector(output));
+                            return output;
+                        }));
+
+        emitParsed();
+    }
+
+    /**
+     * Emits and acks the documents which have been parsed by the threads, in the order in which
+     * they were received. Waits for the oldest ones if there are too many documents in flight.
+     */
+    private void emitParsed() {
+        while (!inFlight.isEmpty()
+                && (inFlight.size() >= maxInFlight || inFlight.peek().isDone())) {
+            final DeferredOutputCollector output;
+            try {
+                output = inFlight.peek().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // same as if the exception had been thrown by the executor thread
+                throw new RuntimeException(e.getCause());
+            }
+            inFlight.poll();
+            output.replay(collector);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (parsingPool != null) {
+            parsingPool.shutdownNow();
+        }
+    }
+
+    private void parse(Tuple tuple, OutputCollector collector) {
         final byte[] content = tuple.getBinaryByField("content");
         final String url = tuple.getStringByField("url");
         final Metadata metadata = (Metadata) tuple.getValueByField("metadata");
+        parse(tuple, url, content, metadata, collector);
+    }
+
+    /**
+     * Parses a document and sends the results to the collector, anchored to the tuple. Can be
+     * called concurrently, as long as the filters are thread safe.
+     */
+    void parse(
+            Tuple tuple, String url, byte[] content, Metadata metadata, OutputCollector collector) {
+
+        if (unchangedSignatureKey != null && isUnchanged(content, metadata)) {
+            LOG.info("Parsing : skipping unchanged {}", url);
+            collector.emit(StatusStreamName, tuple, new Values(url, metadata, Status.FETCHED));
+            collector.ack(tuple);
+            eventCounter.scope("unchanged_skipped").incr();
+            return;
+        }
 
         LOG.info("Parsing : starting {}", url);
 
@@ -183,7 +379,8 @@ public class JSoupParserBolt extends StatusEmitterBolt {
                 mimeType = guessMimeType(url, mimeType, content);
             } catch (Exception e) {
                 String errorMessage = "Exception while guessing mimetype on " + url + ": " + e;
-                handleException(url, e, metadata, tuple, "mimetype guessing", errorMessage);
+                handleException(
+                        collector, url, e, metadata, tuple, "mimetype guessing", errorMessage);
                 return;
             }
             // store identified type in md
@@ -204,7 +401,8 @@ public class JSoupParserBolt extends StatusEmitterBolt {
             if (this.treat_non_html_as_error) {
                 String errorMessage = "Exception content-type " + mimeType + " for " + url;
                 RuntimeException e = new RuntimeException(errorMessage);
-                handleException(url, e, metadata, tuple, "content-type checking", errorMessage);
+                handleException(
+                        collector, url, e, metadata, tuple, "content-type checking", errorMessage);
             } else {
                 LOG.info("Unsupported mimetype {} - passing on : {}", mimeType, url);
                 collector.emit(tuple, new Values(url, content, metadata, ""));
@@ -245,7 +443,26 @@ public class JSoupParserBolt extends StatusEmitterBolt {
         try {
             String html = Charset.forName(charset).decode(ByteBuffer.wrap(content)).toString();
 
-            jsoupDoc = Parser.htmlParser().parseInput(html, url);
+            if (parsingBudget.isActive()) {
+                final BudgetReader reader = parsingBudget.newReader(html);
+                jsoupDoc = Parser.htmlParser().parseInput(reader, url);
+                final Breach breach = reader.getBreach();
+                if (breach != null) {
+                    LOG.info("Parsing budget exceeded ({}) for {}", breach, url);
+                    eventCounter.scope("budget_exceeded_" + breach).incr();
+                    if (parsingBudget.isError()) {
+                        String errorMessage = "Parsing budget exceeded (" + breach + ") for " + url;
+                        RuntimeException e = new RuntimeException(errorMessage);
+                        handleException(
+                                collector, url, e, metadata, tuple, "parsing budget", errorMessage);
+                        return;
+                    }
+                    // the document is processed with a partial DOM
+                    metadata.setValue("parse.budget.exceeded", breach.toString());
+                }
+            } else {
+                jsoupDoc = Parser.htmlParser().parseInput(html, url);
+            }
 
             if (!robotsMetaSkip) {
                 // extracts the robots directives from the meta tags
@@ -318,7 +535,7 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
         } catch (Throwable e) {
             String errorMessage = "Exception while parsing " + url + ": " + e;
-            handleException(url, e, metadata, tuple, "content parsing", errorMessage);
+            handleException(collector, url, e, metadata, tuple, "content parsing", errorMessage);
             return;
         }
 
@@ -345,7 +562,16 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
                     // https://github.com/DigitalPebble/storm-crawler/issues/954
                     if (allowRedirs() && StringUtils.isNotBlank(redirection)) {
-                        emitOutlink(tuple, new URL(url), redirection, metadata);
+                        Outlink ol = filterOutlink(new URL(url), redirection, metadata);
+                        if (ol != null) {
+                            collector.emit(
+                                    StatusStreamName,
+                                    tuple,
+                                    new Values(
+                                            ol.getTargetURL(),
+                                            ol.getMetadata(),
+                                            Status.DISCOVERED));
+                        }
                     }
 
                     // Mark URL as redirected
@@ -377,7 +603,7 @@ public class JSoupParserBolt extends StatusEmitterBolt {
             jsoupFilters.filter(url, content, jsoupDoc, parse);
         } catch (RuntimeException e) {
             String errorMessage = "Exception while running jsoup filters on " + url + ": " + e;
-            handleException(url, e, metadata, tuple, "jsoup filtering", errorMessage);
+            handleException(collector, url, e, metadata, tuple, "jsoup filtering", errorMessage);
             return;
         }
 
@@ -391,7 +617,7 @@ public class JSoupParserBolt extends StatusEmitterBolt {
             parseFilters.filter(url, content, fragment, parse);
         } catch (RuntimeException e) {
             String errorMessage = "Exception while running parse filters on " + url + ": " + e;
-            handleException(url, e, metadata, tuple, "content filtering", errorMessage);
+            handleException(collector, url, e, metadata, tuple, "content filtering", errorMessage);
             return;
         }
 
@@ -414,7 +640,7 @@ public class JSoupParserBolt extends StatusEmitterBolt {
                     tuple,
                     new Values(
                             doc.getKey(),
-                            parseDoc.getContent(),
+                            emitContent ? parseDoc.getContent() : NO_CONTENT,
                             parseDoc.getMetadata(),
                             parseDoc.getText()));
         }
@@ -425,7 +651,27 @@ public class JSoupParserBolt extends StatusEmitterBolt {
         eventCounter.scope("tuple_success").incr();
     }
 
+    /**
+     * Returns true if the hash of the content is the same as the signature found in the metadata,
+     * which must then have been computed on the binary content by the {@link
+     * MD5SignatureParseFilter} with the same hash function and persisted with the status.
+     */
+    private boolean isUnchanged(byte[] content, Metadata metadata) {
+        final String signature = metadata.getFirstValue(unchangedSignatureKey);
+        if (StringUtils.isBlank(signature) || content == null || content.length == 0) {
+            return false;
+        }
+        if (!signature.equals(MD5SignatureParseFilter.hash(unchangedSignatureHash, content))) {
+            return false;
+        }
+        if (StringUtils.isNotBlank(unchangedSignatureCopyKey)) {
+            metadata.setValue(unchangedSignatureCopyKey, signature);
+        }
+        return true;
+    }
+
     private void handleException(
+            OutputCollector collector,
             String url,
             Throwable e,
             Metadata metadata,
@@ -456,6 +702,16 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     public String guessMimeType(String URL, String httpCT, byte[] content) {
 
+        if (fastMimeTypeDetection) {
+            String mimeType = MimeTypeIdentification.getMimeTypeFast(httpCT, content);
+            if (mimeType != null) {
+                eventCounter.scope("mimetype_detection_fast").incr();
+                return mimeType;
+            }
+        }
+
+        eventCounter.scope("mimetype_detection_tika").incr();
+
         org.apache.tika.metadata.Metadata metadata = new org.apache.tika.metadata.Metadata();
 
         if (StringUtils.isNotBlank(httpCT)) {
@@ -477,6 +733,54 @@ public class JSoupParserBolt extends StatusEmitterBolt {
         }
     }
 
+    /**
+     * Keeps track of what a parsing thread emits, acks or fails for a document so that it can be
+     * done later by the executor thread.
+     */
+    private static final class DeferredOutputCollector implements IOutputCollector {
+
+        private final List<Consumer<OutputCollector>> actions = new ArrayList<>();
+
+        @Override
+        public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+            actions.add(c -> c.emit(streamId, anchors, tuple));
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void emitDirect(
+                int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+            actions.add(c -> c.emitDirect(taskId, streamId, anchors, tuple));
+        }
+
+        @Override
+        public void ack(Tuple input) {
+            actions.add(c -> c.ack(input));
+        }
+
+        @Override
+        public void fail(Tuple input) {
+            actions.add(c -> c.fail(input));
+        }
+
+        @Override
+        public void resetTimeout(Tuple input) {
+            actions.add(c -> c.resetTimeout(input));
+        }
+
+        @Override
+        public void reportError(Throwable error) {
+            actions.add(c -> c.reportError(error));
+        }
+
+        @Override
+        public void flush() {}
+
+        void replay(OutputCollector collector) {
+            actions.forEach(a -> a.accept(collector));
+        }
+    }
+
     protected List<Outlink> toOutlinks(
             String url, Metadata metadata, Map<String, List<String>> slinks) {
 
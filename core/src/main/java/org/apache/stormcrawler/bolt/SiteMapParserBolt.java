@@ -32,6 +32,8 @@ import crawlercommons.sitemaps.extension.ExtensionMetadata;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -42,6 +44,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import javax.xml.stream.XMLStreamException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.storm.metric.api.MeanReducer;
 import org.apache.storm.metric.api.ReducedMetric;
@@ -57,6 +60,7 @@ import org.apache.stormcrawler.parse.Outlink;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.parse.StreamingSiteMapParser;
 import org.apache.stormcrawler.persistence.DefaultScheduler;
 import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.HttpHeaders;
@@ -68,11 +72,23 @@ import org.slf4j.LoggerFactory;
  * be forced by 'isSitemap=true' in the metadata, otherwise the tuple are passed on to the default
  * stream, whereas any URLs extracted from the sitemaps are sent to the 'status' field with a
  * 'DISCOVERED' status.
+ *
+ * <p>With <i>sitemap.streaming</i>, XML sitemaps are read with a {@link StreamingSiteMapParser} and
+ * the URLs are filtered and emitted in batches of <i>sitemap.streaming.batch.size</i> as they are
+ * read, instead of after the whole sitemap has been parsed. The parse filters are applied to each
+ * batch. The crawler-commons parser is still used for the other formats or when extensions are
+ * configured.
+ *
+ * <p>With <i>sitemap.skip.unchanged</i>, the date at which a sitemap was processed is stored in its
+ * metadata under <i>sitemap.lastProcessed</i>. When the sitemap is fetched again, the URLs and
+ * sub-sitemaps with a <i>lastmod</i> older than that date are not emitted as they were already when
+ * the sitemap was last processed. The key must be persisted with <i>metadata.persist</i>.
  */
 public class SiteMapParserBolt extends StatusEmitterBolt {
 
     public static final String isSitemapKey = "isSitemap";
     public static final String foundSitemapKey = "foundSitemap";
+    public static final String lastProcessedKey = "sitemap.lastProcessed";
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(SiteMapParserBolt.class);
 
@@ -92,6 +108,13 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
 
     private List<Extension> extensionsToParse;
 
+    private StreamingSiteMapParser streamingParser;
+
+    private int streamingBatchSize = 1000;
+
+    /** Whether to skip the entries not modified since the sitemap was last processed */
+    private boolean skipUnchanged = false;
+
     @Override
     public void execute(Tuple tuple) {
         Metadata metadata = (Metadata) tuple.getValueByField("metadata");
@@ -132,20 +155,42 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
         // as it won't have the k/v if it is a redirected sitemap
         metadata.setValue(isSitemapKey, "true");
 
+        // stored only if the sitemap is processed successfully
+        final String processingTime = Instant.now().toString();
+        Date lastProcessed = null;
+        if (skipUnchanged) {
+            lastProcessed = getLastProcessed(url, metadata);
+        }
+
+        // the crawler-commons parser is needed for the extensions
+        if (streamingParser != null && extensionsToParse.isEmpty()) {
+            try {
+                if (parseSiteMapStreaming(tuple, url, content, metadata, lastProcessed)) {
+                    if (skipUnchanged) {
+                        metadata.setValue(lastProcessedKey, processingTime);
+                    }
+                    collector.emit(
+                            Constants.StatusStreamName,
+                            tuple,
+                            new Values(url, metadata, Status.FETCHED));
+                    collector.ack(tuple);
+                    return;
+                }
+                // not an XML sitemap, use crawler-commons
+            } catch (ParseFiltersException e) {
+                handleParseFiltersException(url, e.getCause(), metadata, tuple);
+                return;
+            } catch (Exception e) {
+                handleParsingException(url, e, metadata, tuple);
+                return;
+            }
+        }
+
         List<Outlink> outlinks;
         try {
-            outlinks = parseSiteMap(url, content, ct, metadata);
+            outlinks = parseSiteMap(url, content, ct, metadata, lastProcessed);
         } catch (Exception e) {
-            // exception while parsing the sitemap
-            String errorMessage = "Exception while parsing " + url + ": " + e;
-            LOG.error(errorMessage);
-            // send to status stream in case another component wants to update
-            // its status
-            metadata.setValue(Constants.STATUS_ERROR_SOURCE, "sitemap parsing");
-            metadata.setValue(Constants.STATUS_ERROR_MESSAGE, errorMessage);
-            collector.emit(
-                    Constants.StatusStreamName, tuple, new Values(url, metadata, Status.ERROR));
-            collector.ack(tuple);
+            handleParsingException(url, e, metadata, tuple);
             return;
         }
 
@@ -157,12 +202,7 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
         try {
             parseFilters.filter(url, content, null, parse);
         } catch (RuntimeException e) {
-            String errorMessage = "Exception while running parse filters on " + url + ": " + e;
-            LOG.error(errorMessage);
-            metadata.setValue(Constants.STATUS_ERROR_SOURCE, "content filtering");
-            metadata.setValue(Constants.STATUS_ERROR_MESSAGE, errorMessage);
-            collector.emit(StatusStreamName, tuple, new Values(url, metadata, Status.ERROR));
-            collector.ack(tuple);
+            handleParseFiltersException(url, e, metadata, tuple);
             return;
         }
 
@@ -172,6 +212,10 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
             collector.emit(Constants.StatusStreamName, tuple, v);
         }
 
+        if (skipUnchanged) {
+            metadata.setValue(lastProcessedKey, processingTime);
+        }
+
         // marking the main URL as successfully fetched
         // regardless of whether we got a parse exception or not
         collector.emit(
@@ -179,8 +223,173 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
         collector.ack(tuple);
     }
 
+    private void handleParsingException(String url, Exception e, Metadata metadata, Tuple tuple) {
+        // exception while parsing the sitemap
+        String errorMessage = "Exception while parsing " + url + ": " + e;
+        LOG.error(errorMessage);
+        // send to status stream in case another component wants to update
+        // its status
+        metadata.setValue(Constants.STATUS_ERROR_SOURCE, "sitemap parsing");
+        metadata.setValue(Constants.STATUS_ERROR_MESSAGE, errorMessage);
+        collector.emit(Constants.StatusStreamName, tuple, new Values(url, metadata, Status.ERROR));
+        collector.ack(tuple);
+    }
+
+    private void handleParseFiltersException(
+            String url, Throwable e, Metadata metadata, Tuple tuple) {
+        String errorMessage = "Exception while running parse filters on " + url + ": " + e;
+        LOG.error(errorMessage);
+        metadata.setValue(Constants.STATUS_ERROR_SOURCE, "content filtering");
+        metadata.setValue(Constants.STATUS_ERROR_MESSAGE, errorMessage);
+        collector.emit(StatusStreamName, tuple, new Values(url, metadata, Status.ERROR));
+        collector.ack(tuple);
+    }
+
+    /**
+     * Parses the sitemap with the streaming parser, the outlinks are filtered and emitted in
+     * batches as they are read. The outlinks of the batches already emitted are kept if an
+     * exception is thrown later on.
+     *
+     * @return false if the content is not an XML sitemap, in which case nothing was emitted
+     * @throws ParseFiltersException if the parse filters failed on a batch
+     */
+    private boolean parseSiteMapStreaming(
+            Tuple tuple,
+            String url,
+            byte[] content,
+            Metadata parentMetadata,
+            Date lastProcessed)
+            throws IOException, XMLStreamException {
+
+        final URL sURL = new URL(url);
+        final long start = System.currentTimeMillis();
+        final Date threshold = getModifiedThreshold();
+        final List<Outlink> batch = new ArrayList<>();
+        final int[] delay = {0};
+
+        boolean parsed =
+                streamingParser.parse(
+                        content,
+                        (target, lastModified, isSubSitemap) -> {
+                            if (isTooOld(target, lastModified, threshold)
+                                    || isUnchanged(target, lastModified, lastProcessed)) {
+                                return;
+                            }
+                            Outlink ol =
+                                    filterOutlink(
+                                            sURL,
+                                            target,
+                                            parentMetadata,
+                                            isSitemapKey,
+                                            Boolean.toString(isSubSitemap),
+                                            "sitemap.lastModified",
+                                            lastModified != null ? lastModified.toString() : "");
+                            if (ol == null) {
+                                return;
+                            }
+                            // add a delay
+                            if (isSubSitemap && this.scheduleSitemapsWithDelay > 0) {
+                                if (delay[0] > 0) {
+                                    ol.getMetadata()
+                                            .setValue(
+                                                    DefaultScheduler.DELAY_METADATA,
+                                                    Integer.toString(delay[0]));
+                                }
+                                delay[0] += this.scheduleSitemapsWithDelay;
+                            }
+                            batch.add(ol);
+                            LOG.debug("{} : [sitemap] {}", url, target);
+                            if (batch.size() >= streamingBatchSize) {
+                                emitBatch(tuple, url, content, parentMetadata, batch);
+                            }
+                        });
+
+        if (!parsed) {
+            return false;
+        }
+
+        // the parse filters get called at least once for the sitemap itself
+        emitBatch(tuple, url, content, parentMetadata, batch);
+
+        averagedMetrics.update(System.currentTimeMillis() - start);
+        return true;
+    }
+
+    /** Applies the parse filters to a batch of outlinks, emits and clears them */
+    private void emitBatch(
+            Tuple tuple, String url, byte[] content, Metadata metadata, List<Outlink> batch) {
+        ParseResult parse = new ParseResult(new ArrayList<>(batch));
+        parse.set(url, metadata);
+        batch.clear();
+        try {
+            parseFilters.filter(url, content, null, parse);
+        } catch (RuntimeException e) {
+            throw new ParseFiltersException(e);
+        }
+        for (Outlink ol : parse.getOutlinks()) {
+            Values v = new Values(ol.getTargetURL(), ol.getMetadata(), Status.DISCOVERED);
+            collector.emit(Constants.StatusStreamName, tuple, v);
+        }
+    }
+
+    /** Date before which the URLs are skipped or null if they should not be filtered */
+    private Date getModifiedThreshold() {
+        if (filterHoursSinceModified == -1) {
+            return null;
+        }
+        Calendar rightNow = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ROOT);
+        rightNow.add(Calendar.HOUR, -filterHoursSinceModified);
+        return rightNow.getTime();
+    }
+
+    private boolean isTooOld(String target, Date lastModified, Date threshold) {
+        if (threshold == null || lastModified == null || !lastModified.before(threshold)) {
+            return false;
+        }
+        LOG.info(
+                "{} has a modified date {} which is more than {} hours old",
+                target,
+                lastModified,
+                filterHoursSinceModified);
+        return true;
+    }
+
+    /** Whether an entry was last modified before the sitemap was last processed */
+    private boolean isUnchanged(String target, Date lastModified, Date lastProcessed) {
+        if (lastProcessed == null || lastModified == null || !lastModified.before(lastProcessed)) {
+            return false;
+        }
+        LOG.debug("{} not modified since {}", target, lastProcessed);
+        return true;
+    }
+
+    /** Date at which the sitemap was last processed or null if unknown */
+    private Date getLastProcessed(String url, Metadata metadata) {
+        String value = metadata.getFirstValue(lastProcessedKey);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            LOG.warn("Invalid value {} for {} in {}", value, lastProcessedKey, url);
+            return null;
+        }
+    }
+
+    /** Thrown from within the streaming parsing when the parse filters fail on a batch */
+    private static class ParseFiltersException extends RuntimeException {
+        ParseFiltersException(RuntimeException cause) {
+            super(cause);
+        }
+    }
+
     private List<Outlink> parseSiteMap(
-            String url, byte[] content, String contentType, Metadata parentMetadata)
+            String url,
+            byte[] content,
+            String contentType,
+            Metadata parentMetadata,
+            Date lastProcessed)
             throws UnknownFormatException, IOException {
 
         URL sURL = new URL(url);
@@ -230,6 +439,10 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
                     lastModifiedValue = lastModified.toString();
                 }
 
+                if (isUnchanged(target, lastModified, lastProcessed)) {
+                    continue;
+                }
+
                 Outlink ol =
                         filterOutlink(
                                 sURL,
@@ -292,6 +505,10 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
                     lastModifiedValue = lastModified.toString();
                 }
 
+                if (isUnchanged(target, lastModified, lastProcessed)) {
+                    continue;
+                }
+
                 Outlink ol =
                         filterOutlink(
                                 sURL,
@@ -353,6 +570,15 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
                         30);
         scheduleSitemapsWithDelay =
                 ConfUtils.getInt(stormConf, "sitemap.schedule.delay", scheduleSitemapsWithDelay);
+        skipUnchanged = ConfUtils.getBoolean(stormConf, "sitemap.skip.unchanged", false);
+        if (ConfUtils.getBoolean(stormConf, "sitemap.streaming", false)) {
+            streamingParser = new StreamingSiteMapParser();
+            streamingBatchSize =
+                    Math.max(
+                            1,
+                            ConfUtils.getInt(
+                                    stormConf, "sitemap.streaming.batch.size", streamingBatchSize));
+        }
         List<String> extensionsStrings =
                 ConfUtils.loadListFromConf("sitemap.extensions", stormConf);
         extensionsToParse = new ArrayList<>(extensionsStrings.size());
@@ -59,6 +59,11 @@ public abstract class StatusEmitterBolt extends BaseRichBolt {
                         stormConf, org.apache.stormcrawler.Constants.AllowRedirParamName, true);
     }
 
+    /** URL filters applied to the outlinks and redirections */
+    protected URLFilters getURLFilters() {
+        return urlFilters;
+    }
+
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
         declarer.declareStream(
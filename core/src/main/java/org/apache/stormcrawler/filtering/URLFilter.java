@@ -45,4 +45,14 @@ public abstract class URLFilter extends AbstractConfigurable {
             @Nullable URL sourceUrl,
             @Nullable Metadata sourceMetadata,
             @NotNull String urlToFilter);
+
+    /**
+     * Specifies whether {@link #filter(URL, Metadata, String)} can be called concurrently by
+     * several threads, e.g. by the parsing threads of the JSoupParserBolt
+     *
+     * @return <code>true</code> if the filter is thread safe, <code>false</code> otherwise.
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
 }
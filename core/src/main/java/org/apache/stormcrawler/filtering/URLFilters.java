@@ -105,6 +105,17 @@ public class URLFilters extends URLFilter implements JSONResource {
         configure(stormConf, confNode);
     }
 
+    /** Thread safe if all the filters are */
+    @Override
+    public boolean isThreadSafe() {
+        for (URLFilter filter : filters) {
+            if (!filter.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public @Nullable String filter(
             @Nullable URL sourceUrl,
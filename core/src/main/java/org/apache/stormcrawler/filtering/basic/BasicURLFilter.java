@@ -82,4 +82,9 @@ public class BasicURLFilter extends URLFilter {
             maxLength = length.asInt(-1);
         }
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -428,4 +428,9 @@ public class BasicURLNormalizer extends URLFilter {
         }
         return true;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -44,4 +44,9 @@ public class SelfURLFilter extends URLFilter {
 
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode paramNode) {}
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -74,4 +74,9 @@ public class MaxDepthFilter extends URLFilter {
             return defaultValue;
         }
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -43,9 +43,20 @@ public class HostURLFilter extends URLFilter {
     private boolean ignoreOutsideHost;
     private boolean ignoreOutsideDomain;
 
-    private URL previousSourceUrl;
-    private String previousSourceHost;
-    private String previousSourceDomain;
+    /** Host and domain of the last source URL, replaced as a whole so that it is thread safe */
+    private volatile Source previousSource;
+
+    private static final class Source {
+        private final URL url;
+        private final String host;
+        private final String domain;
+
+        private Source(URL url, String host, String domain) {
+            this.url = url;
+            this.host = host;
+            this.domain = domain;
+        }
+    }
 
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode filterParams) {
@@ -88,20 +99,19 @@ public class HostURLFilter extends URLFilter {
 
         String fromHost;
         String fromDomain = null;
+        final Source previous = previousSource;
         // Using identity comparison because URL.equals performs poorly
-        if (sourceUrl == previousSourceUrl) {
-            fromHost = previousSourceHost;
+        if (previous != null && sourceUrl == previous.url) {
+            fromHost = previous.host;
             if (ignoreOutsideDomain) {
-                fromDomain = previousSourceDomain;
+                fromDomain = previous.domain;
             }
         } else {
             fromHost = sourceUrl.getHost();
             if (ignoreOutsideDomain) {
                 fromDomain = PaidLevelDomain.getPLD(fromHost);
             }
-            previousSourceHost = fromHost;
-            previousSourceDomain = fromDomain;
-            previousSourceUrl = sourceUrl;
+            previousSource = new Source(sourceUrl, fromHost, fromDomain);
         }
 
         // resolve the hosts
@@ -122,4 +132,9 @@ public class HostURLFilter extends URLFilter {
 
         return urlToFilter;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
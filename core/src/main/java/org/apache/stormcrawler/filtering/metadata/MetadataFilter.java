@@ -70,4 +70,9 @@ public class MetadataFilter extends URLFilter {
         }
         return urlToFilter;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
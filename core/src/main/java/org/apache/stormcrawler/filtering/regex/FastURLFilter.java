@@ -176,6 +176,11 @@ public class FastURLFilter extends URLFilter implements JSONResource {
         }
         return urlToFilter;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
 
 class Rules {
@@ -149,4 +149,9 @@ public abstract class RegexURLFilterBase extends URLFilter {
         }
         return null;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -246,4 +246,9 @@ public class RegexURLNormalizer extends URLFilter {
 
         System.out.println(args[1] + "\n->\n" + output);
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -91,4 +91,9 @@ public class RobotsFilter extends URLFilter {
             fromCacheOnly = node.booleanValue();
         }
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -58,4 +58,9 @@ public class SitemapFilter extends URLFilter {
         }
         return urlToFilter;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
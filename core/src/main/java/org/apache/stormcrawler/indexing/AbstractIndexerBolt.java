@@ -36,7 +36,9 @@ import org.apache.storm.topology.base.BaseRichBolt;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.parse.filter.SimHashParseFilter;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.DocumentIDGenerator;
 import org.apache.stormcrawler.util.RobotsTags;
 import org.apache.stormcrawler.util.URLUtil;
 import org.slf4j.Logger;
@@ -74,8 +76,16 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
     /** Indicates that empty field values should not be emitted at all. */
     public static final String ignoreEmptyFieldValueParamName = "indexer.ignore.empty.fields";
 
+    /**
+     * Whether to skip the documents marked as near duplicates of their previous version by the
+     * {@link org.apache.stormcrawler.parse.filter.SimHashParseFilter}
+     */
+    public static final String skipNearDuplicatesParamName = "indexer.skip.near.duplicates";
+
     private String[] filterKeyValue = null;
 
+    private boolean skipNearDuplicates = false;
+
     private final List<Key> metadata2field = new ArrayList<>();
 
     private String fieldNameForText = null;
@@ -88,6 +98,8 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
 
     private boolean ignoreEmptyFields = false;
 
+    private DocumentIDGenerator documentIDGenerator;
+
     private static class Key {
         private final String key;
         private final String alias;
@@ -134,6 +146,8 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
     public void prepare(
             Map<String, Object> conf, TopologyContext context, OutputCollector collector) {
 
+        documentIDGenerator = DocumentIDGenerator.getInstance(conf, "indexer");
+
         String mdF = ConfUtils.getString(conf, metadataFilterParamName);
         if (StringUtils.isNotBlank(mdF)) {
             // split it in key value
@@ -180,11 +194,14 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
 
         ignoreEmptyFields =
                 ConfUtils.getBoolean(conf, ignoreEmptyFieldValueParamName, ignoreEmptyFields);
+
+        skipNearDuplicates = ConfUtils.getBoolean(conf, skipNearDuplicatesParamName, false);
     }
 
     /**
-     * Determine whether a document should be indexed based on the presence of a given key/value or
-     * the RobotsTags.ROBOTS_NO_INDEX directive.
+     * Determine whether a document should be indexed based on the presence of a given key/value,
+     * the RobotsTags.ROBOTS_NO_INDEX directive or whether it is a near duplicate of its previous
+     * version.
      *
      * @return true if the document should be kept.
      */
@@ -192,6 +209,10 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
         String noindexVal = meta.getFirstValue(RobotsTags.ROBOTS_NO_INDEX);
         if (Boolean.parseBoolean(noindexVal)) return false;
 
+        if (skipNearDuplicates
+                && Boolean.parseBoolean(meta.getFirstValue(SimHashParseFilter.NEAR_DUPLICATE_KEY)))
+            return false;
+
         if (filterKeyValue == null) return true;
         String[] values = meta.getValues(filterKeyValue[0]);
         // key not found
@@ -251,10 +272,11 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
      *
      * @param metadata The {@link Metadata}.
      * @param normalisedUrl The normalised url.
-     * @return Return the normalised url SHA-256 digest as String.
+     * @return Return the ID given by the {@link DocumentIDGenerator}, by default the normalised url
+     *     SHA-256 digest as String.
      */
     protected String getDocumentID(Metadata metadata, String normalisedUrl) {
-        return org.apache.commons.codec.digest.DigestUtils.sha256Hex(normalisedUrl);
+        return documentIDGenerator.getID(metadata, normalisedUrl);
     }
 
     /**
@@ -19,6 +19,7 @@ package org.apache.stormcrawler.jsoup;
 import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -29,6 +30,7 @@ import org.apache.stormcrawler.parse.JSoupFilter;
 import org.apache.stormcrawler.parse.ParseData;
 import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.util.AbstractConfigurable;
+import org.apache.stormcrawler.util.JsonPointerExtractor;
 import org.jetbrains.annotations.NotNull;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -37,7 +39,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Extracts data from JSON-LD representation (https://json-ld.org/). Illustrates how to use the
- * JSoupFilters
+ * JSoupFilters. The values are read in a single pass over the JSON, see {@link
+ * JsonPointerExtractor}.
  */
 public class LDJsonParseFilter extends AbstractConfigurable implements JSoupFilter {
 
@@ -47,13 +50,22 @@ public class LDJsonParseFilter extends AbstractConfigurable implements JSoupFilt
 
     private final List<LabelledJsonPointer> expressions = new LinkedList<>();
 
+    private JsonPointerExtractor extractor;
+
     public static JsonNode filterJson(Document doc) throws Exception {
+        String json = getJson(doc);
+        if (json == null) {
+            return null;
+        }
+        return mapper.readValue(json, JsonNode.class);
+    }
 
+    private static String getJson(Document doc) {
         Element el = doc.selectFirst("script[type=application/ld+json]");
         if (el == null) {
             return null;
         }
-        return mapper.readValue(el.data(), JsonNode.class);
+        return el.data();
     }
 
     @Override
@@ -67,6 +79,11 @@ public class LDJsonParseFilter extends AbstractConfigurable implements JSoupFilt
                     new LabelledJsonPointer(key, JsonPointer.valueOf(node.asText()));
             expressions.add(labelP);
         }
+        List<JsonPointer> pointers = new ArrayList<>(expressions.size());
+        for (LabelledJsonPointer expression : expressions) {
+            pointers.add(expression.pointer);
+        }
+        extractor = new JsonPointerExtractor(pointers);
     }
 
     static class LabelledJsonPointer {
@@ -92,25 +109,33 @@ public class LDJsonParseFilter extends AbstractConfigurable implements JSoupFilt
             @NotNull Document doc,
             @NotNull ParseResult parse) {
         try {
-            JsonNode json = filterJson(doc);
+            String json = getJson(doc);
             if (json == null) {
                 return;
             }
+            String[] values = extractor.extract(json);
+            if (values == null) {
+                return;
+            }
 
             ParseData parseData = parse.get(url);
             Metadata metadata = parseData.getMetadata();
 
             // extract patterns and store as metadata
-            for (LabelledJsonPointer expression : expressions) {
-                JsonNode match = json.at(expression.pointer);
-                if (match.isMissingNode()) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
                     continue;
                 }
-                metadata.addValue(expression.label, match.asText());
+                metadata.addValue(expressions.get(i).label, values[i]);
             }
 
         } catch (Exception e) {
             LOG.error("Exception caught when extracting json", e);
         }
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
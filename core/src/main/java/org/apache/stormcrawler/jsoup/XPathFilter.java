@@ -29,18 +29,36 @@ import org.apache.stormcrawler.parse.ParseData;
 import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.util.AbstractConfigurable;
 import org.jetbrains.annotations.NotNull;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import us.codecraft.xsoup.XPathEvaluator;
 import us.codecraft.xsoup.Xsoup;
+import us.codecraft.xsoup.xevaluator.DefaultXElements;
+import us.codecraft.xsoup.xevaluator.DefaultXPathEvaluator;
+import us.codecraft.xsoup.xevaluator.ElementOperator;
 
-/** Reads a XPATH patterns and stores the value found in web page as metadata */
+/**
+ * Reads a XPATH patterns and stores the value found in web page as metadata. The expressions
+ * selecting elements with a single evaluator are all matched during one traversal of the document,
+ * the other ones (e.g. unions) are evaluated separately.
+ */
 public class XPathFilter extends AbstractConfigurable implements JSoupFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(XPathFilter.class);
 
+    /** Used for resetting the state kept by the evaluators between two documents */
+    private static final Element RESET_ROOT = new Element("reset");
+
     protected final Map<String, List<LabelledExpression>> expressions = new HashMap<>();
 
+    /** Expressions matched during the common traversal, indexed by their position */
+    private final List<LabelledExpression> traversed = new ArrayList<>();
+
     static class LabelledExpression {
 
         String key;
@@ -48,16 +66,33 @@ public class XPathFilter extends AbstractConfigurable implements JSoupFilter {
         private XPathEvaluator expression;
         private String xpath;
 
+        /** Selects the elements, null if the expression must be evaluated separately */
+        private Evaluator evaluator;
+
+        private ElementOperator operator;
+
+        /** Position in the common traversal or -1 */
+        private int index = -1;
+
         private LabelledExpression(String key, String xpath) {
             this.key = key;
             this.xpath = xpath;
             this.expression = Xsoup.compile(xpath);
+            if (expression instanceof DefaultXPathEvaluator) {
+                evaluator = ((DefaultXPathEvaluator) expression).getEvaluator();
+                operator = ((DefaultXPathEvaluator) expression).getElementOperator();
+            }
         }
 
         List<String> evaluate(org.jsoup.nodes.Document doc) throws IOException {
             return expression.evaluate(doc).list();
         }
 
+        /** Returns the values for the elements selected during the common traversal */
+        List<String> evaluate(Elements selected) {
+            return new DefaultXElements(selected, operator).list();
+        }
+
         public String toString() {
             return key + ":" + xpath;
         }
@@ -85,9 +120,12 @@ public class XPathFilter extends AbstractConfigurable implements JSoupFilter {
     private void addExpression(String key, JsonNode expression) {
         String xpathvalue = expression.asText();
         try {
-            expressions
-                    .computeIfAbsent(key, k -> new ArrayList<>())
-                    .add(new LabelledExpression(key, xpathvalue));
+            LabelledExpression lexpression = new LabelledExpression(key, xpathvalue);
+            if (lexpression.evaluator != null) {
+                lexpression.index = traversed.size();
+                traversed.add(lexpression);
+            }
+            expressions.computeIfAbsent(key, k -> new ArrayList<>()).add(lexpression);
         } catch (Exception e) {
             throw new RuntimeException("Can't compile expression : " + xpathvalue, e);
         }
@@ -100,13 +138,16 @@ public class XPathFilter extends AbstractConfigurable implements JSoupFilter {
         ParseData parseData = parse.get(URL);
         Metadata metadata = parseData.getMetadata();
 
+        final Elements[] selected = select(doc);
+
         // applies the XPATH expression in the order in which they are produced
         java.util.Iterator<List<LabelledExpression>> iter = expressions.values().iterator();
         while (iter.hasNext()) {
             List<LabelledExpression> leList = iter.next();
             for (LabelledExpression le : leList) {
                 try {
-                    List<String> values = le.evaluate(doc);
+                    List<String> values =
+                            le.index != -1 ? le.evaluate(selected[le.index]) : le.evaluate(doc);
                     if (values != null && !values.isEmpty()) {
                         metadata.addValues(le.key, values);
                         break;
@@ -117,4 +158,41 @@ public class XPathFilter extends AbstractConfigurable implements JSoupFilter {
             }
         }
     }
+
+    /**
+     * Selects the elements for all the expressions in a single traversal of the document, in the
+     * same order as {@link Collector#collect(Evaluator, Element)}.
+     */
+    private Elements[] select(org.jsoup.nodes.Document doc) {
+        final int size = traversed.size();
+        final Elements[] selected = new Elements[size];
+        if (size == 0) {
+            return selected;
+        }
+        final Evaluator[] evaluators = new Evaluator[size];
+        for (int i = 0; i < size; i++) {
+            selected[i] = new Elements();
+            evaluators[i] = traversed.get(i).evaluator;
+            // resets the evaluator like Collector#collect does
+            Collector.findFirst(evaluators[i], RESET_ROOT);
+        }
+        NodeTraversor.traverse(
+                (node, depth) -> {
+                    if (node instanceof Element) {
+                        Element element = (Element) node;
+                        for (int i = 0; i < size; i++) {
+                            if (evaluators[i].matches(doc, element)) {
+                                selected[i].add(element);
+                            }
+                        }
+                    }
+                },
+                doc);
+        return selected;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
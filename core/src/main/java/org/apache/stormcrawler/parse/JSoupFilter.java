@@ -37,4 +37,15 @@ public interface JSoupFilter extends Configurable {
             byte[] content,
             @NotNull org.jsoup.nodes.Document doc,
             @NotNull ParseResult parse);
+
+    /**
+     * Specifies whether {@link #filter(String, byte[], org.jsoup.nodes.Document, ParseResult)} can
+     * be called concurrently by several threads, e.g. by the parsing threads of the
+     * JSoupParserBolt
+     *
+     * @return <code>true</code> if the filter is thread safe, <code>false</code> otherwise.
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
 }
@@ -110,6 +110,17 @@ public class JSoupFilters extends AbstractConfigurable implements JSoupFilter, J
         filters = list.toArray(new JSoupFilter[0]);
     }
 
+    /** Thread safe if all the filters are */
+    @Override
+    public boolean isThreadSafe() {
+        for (JSoupFilter filter : filters) {
+            if (!filter.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void filter(
             @NotNull String url,
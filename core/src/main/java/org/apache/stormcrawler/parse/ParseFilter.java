@@ -48,4 +48,14 @@ public abstract class ParseFilter extends AbstractConfigurable {
     public boolean needsDOM() {
         return false;
     }
+
+    /**
+     * Specifies whether {@link #filter(String, byte[], DocumentFragment, ParseResult)} can be
+     * called concurrently by several threads, e.g. by the parsing threads of the JSoupParserBolt
+     *
+     * @return <code>true</code> if the filter is thread safe, <code>false</code> otherwise.
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
 }
@@ -128,6 +128,17 @@ public class ParseFilters extends ParseFilter implements JSONResource {
         return false;
     }
 
+    /** Thread safe if all the filters are */
+    @Override
+    public boolean isThreadSafe() {
+        for (ParseFilter filter : filters) {
+            if (!filter.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
 
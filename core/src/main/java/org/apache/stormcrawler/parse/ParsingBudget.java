@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.stormcrawler.util.ConfUtils;
+
+/**
+ * Limits the resources spent on parsing a single HTML document with JSoup. The input given to the
+ * parser ends early when the time allowed for parsing has elapsed, when the number of tags read
+ * reaches its maximum or when the number of characters of HTML does, so that pathological documents
+ * leave a partial DOM instead of pinning the parser. All the limits are deactivated by default.
+ *
+ * <pre>{@code
+ * jsoup.budget.max.time: 2000
+ * jsoup.budget.max.tags: 100000
+ * jsoup.budget.max.chars: 5000000
+ * jsoup.budget.error: false
+ * }</pre>
+ *
+ * @since 3.1
+ */
+public class ParsingBudget {
+
+    /** Time in msec allowed for parsing a document, -1 for no limit */
+    public static final String MAX_TIME_PARAM_NAME = "jsoup.budget.max.time";
+
+    /** Max number of tags read from a document, -1 for no limit */
+    public static final String MAX_TAGS_PARAM_NAME = "jsoup.budget.max.tags";
+
+    /** Max number of characters of HTML read from a document, -1 for no limit */
+    public static final String MAX_CHARS_PARAM_NAME = "jsoup.budget.max.chars";
+
+    /**
+     * Whether a document exceeding its budget should be sent to the status stream with an ERROR
+     * instead of being processed with the partial DOM
+     */
+    public static final String ERROR_PARAM_NAME = "jsoup.budget.error";
+
+    /** Reason why the parsing of a document was interrupted */
+    public enum Breach {
+        TIME,
+        TAGS,
+        CHARS;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final long maxTimeNanos;
+    private final int maxTags;
+    private final int maxChars;
+    private final boolean error;
+
+    public ParsingBudget(Map<String, Object> stormConf) {
+        long maxTime = ConfUtils.getLong(stormConf, MAX_TIME_PARAM_NAME, -1L);
+        maxTimeNanos = maxTime > 0 ? TimeUnit.MILLISECONDS.toNanos(maxTime) : -1;
+        maxTags = ConfUtils.getInt(stormConf, MAX_TAGS_PARAM_NAME, -1);
+        maxChars = ConfUtils.getInt(stormConf, MAX_CHARS_PARAM_NAME, -1);
+        error = ConfUtils.getBoolean(stormConf, ERROR_PARAM_NAME, false);
+    }
+
+    /** Returns true if at least one limit has been set */
+    public boolean isActive() {
+        return maxTimeNanos > 0 || maxTags > 0 || maxChars > 0;
+    }
+
+    /** Returns true if documents exceeding their budget must be treated as errors */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * Returns a reader over the HTML to give to the parser, the time budget starts when this method
+     * is called.
+     */
+    public BudgetReader newReader(String html) {
+        return new BudgetReader(html);
+    }
+
+    /**
+     * Reader which returns the end of the input when the budget is exceeded. Supports mark and
+     * reset as required by JSoup.
+     */
+    public final class BudgetReader extends Reader {
+
+        /**
+         * Max number of characters returned by a single read, determines how often the time is
+         * checked
+         */
+        private static final int MAX_READ = 2048;
+
+        private final String html;
+        private final long deadline;
+
+        /** End of the input as seen by the parser */
+        private int end;
+
+        private int next = 0;
+        private int mark = 0;
+
+        /** Characters before this position have already been given to the parser */
+        private int highWater = 0;
+
+        private int tags = 0;
+
+        private Breach breach = null;
+
+        private BudgetReader(String html) {
+            this.html = html;
+            this.deadline = maxTimeNanos > 0 ? System.nanoTime() + maxTimeNanos : -1;
+            this.end = html.length();
+            if (maxChars > 0 && end > maxChars) {
+                end = maxChars;
+                breach = Breach.CHARS;
+            }
+        }
+
+        /** Returns the reason why the input was cut short or null if it was read entirely */
+        public Breach getBreach() {
+            return breach;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = Math.min(Math.min(len, MAX_READ), end - next);
+            if (n > 0 && next + n > highWater) {
+                // new content - check the time first
+                if (deadline != -1 && System.nanoTime() > deadline) {
+                    end = Math.max(next, highWater);
+                    breach = Breach.TIME;
+                    n = end - next;
+                } else if (maxTags > 0) {
+                    n = countTags(next + n) - next;
+                }
+            }
+            if (n <= 0) {
+                return -1;
+            }
+            html.getChars(next, next + n, cbuf, off);
+            next += n;
+            highWater = Math.max(highWater, next);
+            return n;
+        }
+
+        /** Counts the tags in the new content, returns the position at which reading must stop */
+        private int countTags(int limit) {
+            for (int i = Math.max(next, highWater); i < limit; i++) {
+                if (html.charAt(i) == '<'
+                        && i + 1 < html.length()
+                        && isTagStart(html.charAt(i + 1))) {
+                    if (++tags > maxTags) {
+                        end = i;
+                        breach = Breach.TAGS;
+                        return i;
+                    }
+                }
+            }
+            return limit;
+        }
+
+        private boolean isTagStart(char c) {
+            return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(end - next, n));
+            next += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean ready() {
+            return true;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) {
+            mark = next;
+        }
+
+        @Override
+        public void reset() {
+            next = mark;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse;
+
+import com.rometools.rome.io.impl.DateParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Objects;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pull parser for RSS (0.9x, 1.0 and 2.0) and Atom feeds which reads only the fields of the entries
+ * used by the FeedParserBolt, i.e. link, id, title, publication date and description, instead of
+ * building a ROME SyndFeed for the whole document. The entries are passed to a {@link Handler} as
+ * soon as they are read, which can stop the parsing, e.g. once it reaches entries older than the
+ * previous fetch of the feed.
+ *
+ * <p>The dates are parsed with ROME's DateParser so that they are the same as with a SyndFeed. As
+ * for ROME, the publication date of an RSS item is its pubDate or its dc:date, the one of an Atom
+ * entry its published or dc:date element. The title and summary of an Atom entry with a type
+ * <i>xhtml</i> or XML keep their markup, which is serialized as ROME does, whereas the markup of
+ * the ones with a type <i>html</i> is escaped in the feed and is returned as text.
+ *
+ * @since 3.1
+ */
+public class StreamingFeedParser {
+
+    private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+
+    /** Fields of a feed entry */
+    public static class Entry {
+        private String link;
+        private String uri;
+        private String title;
+        private String description;
+        private Date publishedDate;
+
+        /** URL of the entry, its alternate link for Atom feeds */
+        public String getLink() {
+            return link;
+        }
+
+        /** guid for RSS or id for Atom */
+        public String getUri() {
+            return uri;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        /** description for RSS or summary for Atom */
+        public String getDescription() {
+            return description;
+        }
+
+        public Date getPublishedDate() {
+            return publishedDate;
+        }
+    }
+
+    /** Receives the entries of a feed in the order in which they are found */
+    public interface Handler {
+        /**
+         * @return false to stop the parsing
+         */
+        boolean onEntry(Entry entry);
+    }
+
+    private final XMLInputFactory factory;
+
+    public StreamingFeedParser() {
+        factory = XMLInputFactory.newInstance();
+        // no DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    /**
+     * Parses a feed until its end or until the handler returns false.
+     *
+     * @return false if the content is not an RSS or Atom feed, in which case the handler has not
+     *     been called
+     * @throws XMLStreamException if the XML is not well-formed
+     */
+    public boolean parse(byte[] content, Handler handler) throws IOException, XMLStreamException {
+        try (InputStream in = new ByteArrayInputStream(content)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                return parse(reader, handler);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private boolean parse(XMLStreamReader reader, Handler handler) throws XMLStreamException {
+        boolean atom = false;
+        int depth = 0;
+        // depth of the current entry or -1 if outside of one
+        int entryDepth = -1;
+        String entryNamespace = null;
+        Entry entry = null;
+        String field = null;
+        // whether the markup of the current field must be kept
+        boolean markup = false;
+        // whether the start tag of the last element of the markup is still open
+        boolean openTag = false;
+        String pubDate = null;
+        String dcDate = null;
+        final StringBuilder text = new StringBuilder();
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (markup && depth > entryDepth + 1) {
+                        if (openTag) {
+                            text.append('>');
+                        }
+                        appendStartTag(reader, text);
+                        openTag = true;
+                    } else if (depth == 1) {
+                        if ("feed".equals(name)) {
+                            atom = true;
+                        } else if (!"rss".equals(name) && !"RDF".equals(name)) {
+                            return false;
+                        }
+                    } else if (entryDepth == -1) {
+                        if (name.equals(atom ? "entry" : "item")) {
+                            entryDepth = depth;
+                            entryNamespace = reader.getNamespaceURI();
+                            entry = new Entry();
+                            pubDate = null;
+                            dcDate = null;
+                        }
+                    } else if (depth == entryDepth + 1) {
+                        String ns = reader.getNamespaceURI();
+                        if (DC_NAMESPACE.equals(ns)) {
+                            if ("date".equals(name)) {
+                                field = name;
+                                text.setLength(0);
+                            }
+                        } else if (!Objects.equals(ns, entryNamespace)) {
+                            // elements from extensions e.g. media:title
+                        } else if (atom && "link".equals(name)) {
+                            String rel = reader.getAttributeValue(null, "rel");
+                            String href = reader.getAttributeValue(null, "href");
+                            if (entry.link == null
+                                    && href != null
+                                    && (rel == null || "alternate".equals(rel))) {
+                                entry.link = href.trim();
+                            }
+                        } else if (isEntryField(name, atom)) {
+                            field = name;
+                            text.setLength(0);
+                            markup =
+                                    atom
+                                            && ("title".equals(name) || "summary".equals(name))
+                                            && isXMLType(reader.getAttributeValue(null, "type"));
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (markup) {
+                        if (openTag) {
+                            text.append('>');
+                            openTag = false;
+                        }
+                        escape(reader.getText(), false, text);
+                    } else if (field != null) {
+                        text.append(
+                                reader.getTextCharacters(),
+                                reader.getTextStart(),
+                                reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (markup && depth > entryDepth + 1) {
+                        if (openTag) {
+                            text.append(" />");
+                            openTag = false;
+                        } else {
+                            text.append("</").append(qualifiedName(reader)).append('>');
+                        }
+                    } else if (field != null && depth == entryDepth + 1) {
+                        String value = text.toString();
+                        switch (field) {
+                            case "title":
+                                entry.title = value;
+                                break;
+                            case "link":
+                                entry.link = value.trim();
+                                break;
+                            case "guid":
+                            case "id":
+                                entry.uri = value.trim();
+                                break;
+                            case "description":
+                            case "summary":
+                                entry.description = value;
+                                break;
+                            case "pubDate":
+                            case "published":
+                                pubDate = value.trim();
+                                break;
+                            case "date":
+                                dcDate = value.trim();
+                                break;
+                            default:
+                                break;
+                        }
+                        field = null;
+                        markup = false;
+                    } else if (depth == entryDepth) {
+                        entry.publishedDate = parseDate(pubDate);
+                        if (entry.publishedDate == null) {
+                            entry.publishedDate = parseDate(dcDate);
+                        }
+                        entryDepth = -1;
+                        if (!handler.onEntry(entry)) {
+                            return true;
+                        }
+                        entry = null;
+                    }
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEntryField(String name, boolean atom) {
+        if (atom) {
+            return "title".equals(name)
+                    || "id".equals(name)
+                    || "summary".equals(name)
+                    || "published".equals(name);
+        }
+        return "title".equals(name)
+                || "link".equals(name)
+                || "guid".equals(name)
+                || "description".equals(name)
+                || "pubDate".equals(name);
+    }
+
+    /** Whether the type of an Atom text construct is xhtml or XML, as for ROME */
+    private static boolean isXMLType(String type) {
+        if (type == null) {
+            return false;
+        }
+        type = type.toLowerCase(Locale.ROOT);
+        return "xhtml".equals(type) || type.contains("/xml") || type.contains("+xml");
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        if (prefix == null || prefix.isEmpty()) {
+            return reader.getLocalName();
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    /** Appends the start tag of the current element without its closing bracket */
+    private static void appendStartTag(XMLStreamReader reader, StringBuilder text) {
+        text.append('<').append(qualifiedName(reader));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            text.append(" xmlns");
+            if (prefix != null && !prefix.isEmpty()) {
+                text.append(':').append(prefix);
+            }
+            text.append("=\"");
+            escape(reader.getNamespaceURI(i), true, text);
+            text.append('"');
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            text.append(' ');
+            if (prefix != null && !prefix.isEmpty()) {
+                text.append(prefix).append(':');
+            }
+            text.append(reader.getAttributeLocalName(i)).append("=\"");
+            escape(reader.getAttributeValue(i), true, text);
+            text.append('"');
+        }
+    }
+
+    private static void escape(String value, boolean attribute, StringBuilder text) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    text.append("&amp;");
+                    break;
+                case '<':
+                    text.append("&lt;");
+                    break;
+                case '>':
+                    text.append("&gt;");
+                    break;
+                case '"':
+                    text.append(attribute ? "&quot;" : "\"");
+                    break;
+                default:
+                    text.append(c);
+                    break;
+            }
+        }
+    }
+
+    private static Date parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return DateParser.parseDate(value, Locale.US);
+    }
+}
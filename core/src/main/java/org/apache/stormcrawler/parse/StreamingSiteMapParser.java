@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pull parser for XML sitemaps and sitemap indices, plain or gzipped. Unlike crawler-commons'
+ * SiteMapParser, which builds all the entries of a sitemap before returning them, the entries are
+ * passed to a {@link Handler} as soon as they are read so that the memory used does not depend on
+ * the number of URLs in the sitemap.
+ *
+ * <p>Only the <i>loc</i> and <i>lastmod</i> elements are read, the namespaces are ignored. Text
+ * sitemaps, RSS or Atom feeds and documents which are not well-formed before their root element are
+ * not handled, {@link #parse(byte[], Handler)} returns false without calling the handler so that
+ * the caller can fall back to crawler-commons.
+ *
+ * @since 3.1
+ */
+public class StreamingSiteMapParser {
+
+    /** Receives the entries of a sitemap in the order in which they are found */
+    public interface Handler {
+        /**
+         * @param loc URL of the entry
+         * @param lastModified value of its lastmod or null if missing or not a valid date
+         * @param isSitemap true if the entry is a sitemap from a sitemap index
+         */
+        void onEntry(String loc, Date lastModified, boolean isSitemap);
+    }
+
+    private static final int PEEK_LENGTH = 64;
+
+    private final XMLInputFactory factory;
+
+    public StreamingSiteMapParser() {
+        factory = XMLInputFactory.newInstance();
+        // no DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    /**
+     * Parses a sitemap, decompressing it if it is gzipped.
+     *
+     * @return false if the content is not an XML sitemap or sitemap index, in which case the
+     *     handler has not been called
+     * @throws XMLStreamException if the XML is not well-formed after the root element
+     */
+    public boolean parse(byte[] content, Handler handler) throws IOException, XMLStreamException {
+        InputStream in = new ByteArrayInputStream(content);
+        if (isGzipped(content)) {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedInputStream bis = new BufferedInputStream(in)) {
+            if (!looksLikeXML(bis)) {
+                return false;
+            }
+            XMLStreamReader reader = factory.createXMLStreamReader(bis);
+            try {
+                return parse(reader, handler);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private boolean parse(XMLStreamReader reader, Handler handler) throws XMLStreamException {
+        boolean index = false;
+        int depth = 0;
+        boolean inEntry = false;
+        String field = null;
+        String loc = null;
+        String lastmod = null;
+        final StringBuilder text = new StringBuilder();
+
+        while (reader.hasNext()) {
+            int event;
+            try {
+                event = reader.next();
+            } catch (XMLStreamException e) {
+                // not well-formed before the root element, leave it to crawler-commons
+                if (depth == 0) {
+                    return false;
+                }
+                throw e;
+            }
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 1) {
+                        if ("sitemapindex".equals(name)) {
+                            index = true;
+                        } else if (!"urlset".equals(name)) {
+                            return false;
+                        }
+                    } else if (depth == 2) {
+                        inEntry = name.equals(index ? "sitemap" : "url");
+                        loc = null;
+                        lastmod = null;
+                    } else if (depth == 3
+                            && inEntry
+                            && ("loc".equals(name) || "lastmod".equals(name))) {
+                        field = name;
+                        text.setLength(0);
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (field != null) {
+                        text.append(
+                                reader.getTextCharacters(),
+                                reader.getTextStart(),
+                                reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (field != null && depth == 3) {
+                        if ("loc".equals(field)) {
+                            loc = text.toString().trim();
+                        } else {
+                            lastmod = text.toString().trim();
+                        }
+                        field = null;
+                    } else if (inEntry && depth == 2) {
+                        if (isValidURL(loc)) {
+                            handler.onEntry(loc, parseDate(lastmod), index);
+                        }
+                        inEntry = false;
+                    }
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isValidURL(String loc) {
+        if (loc == null || loc.isEmpty()) {
+            return false;
+        }
+        try {
+            new URL(loc);
+            return true;
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts a date in one of the W3C formats allowed in sitemaps (YYYY, YYYY-MM, YYYY-MM-DD or a
+     * full date and time). Values without a time zone are considered to be in UTC.
+     *
+     * @return the date or null if the value is missing or is not valid
+     */
+    public static Date parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            if (value.indexOf('T') != -1) {
+                try {
+                    return Date.from(OffsetDateTime.parse(value).toInstant());
+                } catch (DateTimeParseException e) {
+                    return Date.from(LocalDateTime.parse(value).toInstant(ZoneOffset.UTC));
+                }
+            }
+            switch (value.length()) {
+                case 4:
+                    value = Year.parse(value).atDay(1).toString();
+                    break;
+                case 7:
+                    value = YearMonth.parse(value).atDay(1).toString();
+                    break;
+                default:
+                    break;
+            }
+            return Date.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean isGzipped(byte[] content) {
+        return content.length > 2
+                && content[0] == (byte) GZIPInputStream.GZIP_MAGIC
+                && content[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    /** Whether the first character after a byte order mark and any whitespace is a '<' */
+    private static boolean looksLikeXML(BufferedInputStream in) throws IOException {
+        in.mark(PEEK_LENGTH);
+        try {
+            byte[] start = new byte[PEEK_LENGTH];
+            int length = in.readNBytes(start, 0, PEEK_LENGTH);
+            int i = 0;
+            // UTF-16 byte order marks, leave it to the XML parser
+            if (length >= 2
+                    && ((start[0] == (byte) 0xFE && start[1] == (byte) 0xFF)
+                            || (start[0] == (byte) 0xFF && start[1] == (byte) 0xFE))) {
+                return true;
+            }
+            // UTF-8 byte order mark
+            if (length >= 3
+                    && start[0] == (byte) 0xEF
+                    && start[1] == (byte) 0xBB
+                    && start[2] == (byte) 0xBF) {
+                i = 3;
+            }
+            for (; i < length; i++) {
+                if (!Character.isWhitespace(start[i])) {
+                    return start[i] == '<';
+                }
+            }
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+}
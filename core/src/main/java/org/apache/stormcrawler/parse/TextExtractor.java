@@ -16,6 +16,7 @@
  */
 package org.apache.stormcrawler.parse;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -28,8 +29,12 @@ import org.jsoup.nodes.CDataNode;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
-import org.jsoup.select.Elements;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
 import org.jsoup.select.NodeVisitor;
+import org.jsoup.select.QueryParser;
 
 /**
  * Filters the text extracted from HTML documents, used by JSoupParserBolt. Configured with optional
@@ -64,15 +69,30 @@ public class TextExtractor {
     public static final String NO_TEXT_PARAM_NAME = "textextractor.no.text";
     public static final String TEXT_MAX_TEXT_PARAM_NAME = "textextractor.skip.after";
 
+    /** Buffers which grew larger than this are not kept for the next document */
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+
+    /** Empty element used to reset the state of the evaluators between documents */
+    private static final Element RESET_ROOT = new Element("div");
+
     private final List<String> inclusionPatterns;
+    private final Evaluator[] inclusionEvaluators;
     private final HashSet<String> excludedTags;
     private final boolean noText;
     private final int maxTextSize;
 
+    /** Per thread state reused from one document to the next */
+    private final ThreadLocal<Extraction> extractions = ThreadLocal.withInitial(Extraction::new);
+
     public TextExtractor(Map<String, Object> stormConf) {
         maxTextSize = ConfUtils.getInt(stormConf, TEXT_MAX_TEXT_PARAM_NAME, -1);
         noText = ConfUtils.getBoolean(stormConf, NO_TEXT_PARAM_NAME, false);
         inclusionPatterns = ConfUtils.loadListFromConf(INCLUDE_PARAM_NAME, stormConf);
+        // compile the patterns once and for all
+        inclusionEvaluators = new Evaluator[inclusionPatterns.size()];
+        for (int i = 0; i < inclusionEvaluators.length; i++) {
+            inclusionEvaluators[i] = QueryParser.parse(inclusionPatterns.get(i));
+        }
         excludedTags = new HashSet<String>();
         ConfUtils.loadListFromConf(EXCLUDE_PARAM_NAME, stormConf)
                 .forEach((s) -> excludedTags.add(s.toLowerCase(Locale.ROOT)));
@@ -82,33 +102,208 @@ public class TextExtractor {
         // not interested in getting any text?
         if (noText) return "";
 
-        final StringBuilder accum = new StringBuilder();
+        final Extraction extraction = extractions.get();
+        try {
+            return extraction.extract(element);
+        } finally {
+            extraction.clear();
+        }
+    }
+
+    /**
+     * Finds the matches of the inclusion patterns and extracts their text in a single traversal of
+     * the document. The text of the whole document is accumulated separately until a first match is
+     * found so that it can be used if nothing matches. The traversal stops as soon as the text
+     * limit is reached for the matches of the first pattern.
+     */
+    private final class Extraction implements NodeFilter {
+
+        /** Text of the whole element, used if no pattern matches */
+        private final TextBuffer whole = new TextBuffer();
+
+        /** Text of the matches of the best pattern found so far */
+        private final TextBuffer matched = new TextBuffer();
+
+        /** Matches of the best pattern found so far, in document order */
+        private final List<Element> matches = new ArrayList<>();
+
+        private Element root;
+
+        /** Index of the best pattern found so far, number of patterns if none */
+        private int best;
+
+        /** Outermost match currently being extracted */
+        private Element current;
 
-        // no patterns at all - return the text from the whole document
-        if (inclusionPatterns.size() == 0 && excludedTags.size() == 0) {
-            _text(element, accum);
-        } else {
-            Elements matches = new Elements();
+        /** Whether a match was found within another match of the same pattern */
+        private boolean nested;
 
-            for (String pattern : inclusionPatterns) {
-                matches = element.select(pattern);
-                if (!matches.isEmpty()) {
-                    break;
+        String extract(Element element) {
+            root = element;
+            best = inclusionEvaluators.length;
+
+            NodeTraversor.filter(this, element);
+
+            // nothing matched or no patterns were defined - use the whole doc
+            if (best == inclusionEvaluators.length) {
+                return whole.trimmed();
+            }
+
+            // the text of nested matches is repeated after the one of the
+            // enclosing match, which can't be done incrementally
+            if (nested) {
+                matched.clear();
+                for (Element node : matches) {
+                    _text(node, matched.accum);
+                    matched.accum.append('\n');
+                }
+            }
+
+            return matched.trimmed();
+        }
+
+        @Override
+        public FilterResult head(Node node, int depth) {
+            if (inclusionEvaluators.length > 0 && node instanceof Element) {
+                match((Element) node);
+            }
+            if (best == inclusionEvaluators.length) {
+                whole.head(node);
+                if (inclusionEvaluators.length == 0 && whole.isFull()) {
+                    return FilterResult.STOP;
                 }
+            } else if (current != null) {
+                matched.head(node);
+            }
+            // no better pattern can be found and no more text is needed
+            if (best == 0 && !nested && matched.isFull()) {
+                return FilterResult.STOP;
             }
+            return FilterResult.CONTINUE;
+        }
 
-            // if nothing matches or no patterns were defined use the whole doc
-            if (matches.isEmpty()) {
+        @Override
+        public FilterResult tail(Node node, int depth) {
+            if (best == inclusionEvaluators.length) {
+                whole.tail(node);
+            } else if (current != null) {
+                matched.tail(node);
+                if (node == current) {
+                    matched.accum.append('\n');
+                    current = null;
+                }
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        /** Checks the element against the patterns which are at least as good as the best one */
+        private void match(Element element) {
+            final int last = Math.min(best, inclusionEvaluators.length - 1);
+            for (int i = 0; i <= last; i++) {
+                if (!inclusionEvaluators[i].matches(root, element)) {
+                    continue;
+                }
+                if (i < best) {
+                    // better pattern - discard what has been found so far
+                    best = i;
+                    matches.clear();
+                    matched.clear();
+                    current = null;
+                    nested = false;
+                }
                 matches.add(element);
+                if (current == null) {
+                    current = element;
+                    matched.excluded = null;
+                } else {
+                    nested = true;
+                }
+                return;
+            }
+        }
+
+        void clear() {
+            root = null;
+            current = null;
+            nested = false;
+            matches.clear();
+            whole.clear();
+            matched.clear();
+            // Evaluator.reset() is not visible, running a query on an empty element
+            // clears what the structural evaluators have memoised for the document
+            for (Evaluator evaluator : inclusionEvaluators) {
+                Collector.findFirst(evaluator, RESET_ROOT);
+            }
+        }
+    }
+
+    /** Accumulates normalised text, skipping excluded tags, until the text limit is reached */
+    private final class TextBuffer {
+
+        private StringBuilder accum = new StringBuilder();
+
+        private Node excluded = null;
+
+        /** Set once the limit has been found to be reached when visiting a node */
+        private boolean closed = false;
+
+        boolean isFull() {
+            return closed || (maxTextSize > 0 && accum.length() >= maxTextSize);
+        }
+
+        void head(Node node) {
+            // interrupts if too much text has already been produced
+            if (isFull()) {
+                closed = true;
+                return;
+            }
+            if (excluded == null && node instanceof TextNode) {
+                TextNode textNode = (TextNode) node;
+                appendNormalisedText(accum, textNode);
+            } else if (node instanceof Element) {
+                Element element = (Element) node;
+                if (excludedTags.contains(element.tagName())) {
+                    excluded = element;
+                }
+                if (accum.length() > 0
+                        && (element.isBlock() || element.tag().getName().equals("br"))
+                        && !lastCharIsWhitespace(accum)) accum.append(' ');
             }
+        }
 
-            for (Element node : matches) {
-                _text(node, accum);
-                accum.append("\n");
+        void tail(Node node) {
+            if (closed) return;
+            // make sure there is a space between block tags and immediately
+            // following text nodes <div>One</div>Two should be "One Two".
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                if (element == excluded) {
+                    excluded = null;
+                }
+                if (element.isBlock()
+                        && (node.nextSibling() instanceof TextNode)
+                        && !lastCharIsWhitespace(accum)) accum.append(' ');
             }
         }
 
-        return accum.toString().trim();
+        /** Equivalent to accum.toString().trim() without the intermediate copy */
+        String trimmed() {
+            int start = 0;
+            int end = accum.length();
+            while (start < end && accum.charAt(start) <= ' ') start++;
+            while (end > start && accum.charAt(end - 1) <= ' ') end--;
+            return accum.substring(start, end);
+        }
+
+        void clear() {
+            if (accum.capacity() > MAX_RETAINED_CAPACITY) {
+                accum = new StringBuilder();
+            } else {
+                accum.setLength(0);
+            }
+            excluded = null;
+            closed = false;
+        }
     }
 
     private void _text(Node node, final StringBuilder accum) {
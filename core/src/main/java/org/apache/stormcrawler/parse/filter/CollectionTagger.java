@@ -125,6 +125,11 @@ public class CollectionTagger extends ParseFilter implements JSONResource {
             parse.get(URL).getMetadata().setValues(key, tags);
         }
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
 
 class Collections {
@@ -64,4 +64,9 @@ public class CommaSeparatedToMultivaluedMetadata extends ParseFilter {
             }
         }
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
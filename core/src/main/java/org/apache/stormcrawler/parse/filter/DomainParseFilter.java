@@ -59,4 +59,9 @@ public class DomainParseFilter extends ParseFilter {
         String value = partitioner.getPartition(URL, metadata);
         metadata.setValue(mdKey, value);
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -19,57 +19,77 @@ package org.apache.stormcrawler.parse.filter;
 import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.ParseData;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.util.JsonPointerExtractor;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Node;
 
-/** Extracts data from JSON-LD representation (https://json-ld.org/) */
+/**
+ * Extracts data from JSON-LD representation (https://json-ld.org/). The values are read in a single
+ * pass over the JSON, see {@link JsonPointerExtractor}.
+ */
 public class LDJsonParseFilter extends ParseFilter {
 
     public static final Logger LOG = LoggerFactory.getLogger(LDJsonParseFilter.class);
 
-    private static XPathFactory factory = XPathFactory.newInstance();
-    private static XPath xpath = factory.newXPath();
+    /** Compiled for each thread, as the XPath objects are not thread safe */
+    private static final ThreadLocal<XPathExpression> scriptExpression =
+            ThreadLocal.withInitial(
+                    () -> {
+                        try {
+                            return XPathFactory.newInstance()
+                                    .newXPath()
+                                    .compile("//SCRIPT[@type=\"application/ld+json\"]");
+                        } catch (XPathExpressionException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
 
     private static ObjectMapper mapper = new ObjectMapper();
 
     private List<LabelledJsonPointer> expressions = new LinkedList<>();
 
+    private JsonPointerExtractor extractor;
+
     @Override
     public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
         if (doc == null) {
             return;
         }
         try {
-            JsonNode json = filterJson(doc);
+            String json = getJson(doc);
             if (json == null) {
                 return;
             }
+            String[] values = extractor.extract(json);
+            if (values == null) {
+                return;
+            }
 
             ParseData parseData = parse.get(URL);
             Metadata metadata = parseData.getMetadata();
 
             // extract patterns and store as metadata
-            for (LabelledJsonPointer expression : expressions) {
-                JsonNode match = json.at(expression.pointer);
-                if (match.isMissingNode()) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
                     continue;
                 }
-                metadata.addValue(expression.label, match.asText());
+                metadata.addValue(expressions.get(i).label, values[i]);
             }
 
         } catch (Exception e) {
@@ -78,13 +98,19 @@ public class LDJsonParseFilter extends ParseFilter {
     }
 
     public static JsonNode filterJson(DocumentFragment doc) throws Exception {
-        XPathExpression expressionJobPosting =
-                xpath.compile("//SCRIPT[@type=\"application/ld+json\"]");
-        Node scriptNode = (Node) expressionJobPosting.evaluate(doc, XPathConstants.NODE);
+        String json = getJson(doc);
+        if (json == null) {
+            return null;
+        }
+        return mapper.readValue(json, JsonNode.class);
+    }
+
+    private static String getJson(DocumentFragment doc) throws XPathExpressionException {
+        Node scriptNode = (Node) scriptExpression.get().evaluate(doc, XPathConstants.NODE);
         if (scriptNode == null) {
             return null;
         }
-        return mapper.readValue(scriptNode.getTextContent(), JsonNode.class);
+        return scriptNode.getTextContent();
     }
 
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode filterParams) {
@@ -97,6 +123,11 @@ public class LDJsonParseFilter extends ParseFilter {
                     new LabelledJsonPointer(key, JsonPointer.valueOf(node.asText()));
             expressions.add(labelP);
         }
+        List<JsonPointer> pointers = new ArrayList<>(expressions.size());
+        for (LabelledJsonPointer expression : expressions) {
+            pointers.add(expression.pointer);
+        }
+        extractor = new JsonPointerExtractor(pointers);
     }
 
     class LabelledJsonPointer {
@@ -119,4 +150,9 @@ public class LDJsonParseFilter extends ParseFilter {
     public boolean needsDOM() {
         return true;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
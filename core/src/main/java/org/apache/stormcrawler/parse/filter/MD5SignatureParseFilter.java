@@ -18,6 +18,7 @@ package org.apache.stormcrawler.parse.filter;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Map;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.storm.shade.org.apache.commons.lang.StringUtils;
@@ -25,6 +26,7 @@ import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.ParseData;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.util.XXHash64;
 import org.jetbrains.annotations.NotNull;
 import org.w3c.dom.DocumentFragment;
 
@@ -43,6 +45,9 @@ import org.w3c.dom.DocumentFragment;
  *   <dd>name of the metadata field to hold a temporary copy of the signature used to decide by
  *       signature comparison whether the document has changed. If not defined or empty, the
  *       signature is not copied.
+ *   <dt>hash
+ *   <dd>hash function used for the signature: &quot;md5&quot; (default) or &quot;xxhash64&quot;, a
+ *       non-cryptographic hash which is much cheaper to compute
  * </dl>
  */
 public class MD5SignatureParseFilter extends ParseFilter {
@@ -53,6 +58,8 @@ public class MD5SignatureParseFilter extends ParseFilter {
 
     private String copyKeyName = null;
 
+    private String hash = "md5";
+
     @Override
     public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
         ParseData parseData = parse.get(URL);
@@ -75,8 +82,7 @@ public class MD5SignatureParseFilter extends ParseFilter {
         if (data == null) {
             data = URL.getBytes(StandardCharsets.UTF_8);
         }
-        String hex = DigestUtils.md5Hex(data);
-        metadata.setValue(key_name, hex);
+        metadata.setValue(key_name, hash(hash, data));
     }
 
     @Override
@@ -93,5 +99,33 @@ public class MD5SignatureParseFilter extends ParseFilter {
         if (node != null && node.isTextual() && StringUtils.isNotBlank(node.asText(""))) {
             copyKeyName = node.asText("signatureOld");
         }
+        node = filterParams.get("hash");
+        if (node != null && node.isTextual()) {
+            hash = node.asText().toLowerCase(Locale.ROOT);
+            // fail early if not supported
+            hash(hash, new byte[0]);
+        }
+    }
+
+    /**
+     * Returns the hexadecimal signature of the data with the given hash function, &quot;md5&quot;
+     * or &quot;xxhash64&quot;.
+     *
+     * @throws IllegalArgumentException if the hash function is not supported
+     */
+    public static String hash(String function, byte[] data) {
+        switch (function) {
+            case "md5":
+                return DigestUtils.md5Hex(data);
+            case "xxhash64":
+                return XXHash64.hashHex(data);
+            default:
+                throw new IllegalArgumentException("Unsupported hash function " + function);
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
     }
 }
@@ -58,4 +58,9 @@ public class MimeTypeNormalization extends ParseFilter {
         }
         m.setValue("format", ct);
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Map;
+import org.apache.commons.lang.StringUtils;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.parse.ParseData;
+import org.apache.stormcrawler.parse.ParseFilter;
+import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.util.XXHash64;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.DocumentFragment;
+
+/**
+ * Computes a 64 bit SimHash fingerprint of the text of a page, stored in the metadata as a 16
+ * character hexadecimal string. Unlike a hash of the content, pages which differ only by a few
+ * words (timestamps, ads, counters...) get fingerprints which differ only by a few bits. The
+ * features used are the shingles of consecutive words of the text, in lowercase.
+ *
+ * <p>If the metadata already contains the fingerprint of a previous fetch and the number of bits
+ * which differ from the new one is not larger than <i>maxDistance</i>, the key {@value
+ * #NEAR_DUPLICATE_KEY} is set to true in the metadata, which indexers can use to skip the document
+ * (see <i>indexer.skip.near.duplicates</i>). The {@link
+ * org.apache.stormcrawler.persistence.AdaptiveScheduler} can use the fingerprints as signatures
+ * with <i>scheduler.adaptive.signature.max.distance</i>.
+ *
+ * <p>Configuration properties:
+ *
+ * <dl>
+ *   <dt>keyName
+ *   <dd>name of the metadata field to hold the fingerprint (default: &quot;simhash&quot;)
+ *   <dt>keyNameCopy
+ *   <dd>name of the metadata field to hold a temporary copy of the previous fingerprint. If not
+ *       defined or empty, the fingerprint is not copied.
+ *   <dt>shingleSize
+ *   <dd>number of consecutive words in a feature (default: 3)
+ *   <dt>maxDistance
+ *   <dd>max number of bits differing from the previous fingerprint for a page to be considered a
+ *       near duplicate (default: 3)
+ * </dl>
+ *
+ * @since 3.1
+ */
+public class SimHashParseFilter extends ParseFilter {
+
+    /** Metadata key set to true when a page is a near duplicate of the one previously fetched */
+    public static final String NEAR_DUPLICATE_KEY = "simhash.near.duplicate";
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private String keyName = "simhash";
+
+    private String copyKeyName = null;
+
+    private int shingleSize = 3;
+
+    private int maxDistance = 3;
+
+    @Override
+    public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
+        ParseData parseData = parse.get(URL);
+        Metadata metadata = parseData.getMetadata();
+        String previous = metadata.getFirstValue(keyName);
+        if (copyKeyName != null && previous != null) {
+            metadata.setValue(copyKeyName, previous);
+        }
+        metadata.remove(NEAR_DUPLICATE_KEY);
+
+        String text = parseData.getText();
+        if (StringUtils.isBlank(text)) {
+            metadata.remove(keyName);
+            return;
+        }
+
+        String fingerprint = XXHash64.toHex(fingerprint(text, shingleSize));
+        int distance = distance(previous, fingerprint);
+        if (distance != -1 && distance <= maxDistance) {
+            metadata.setValue(NEAR_DUPLICATE_KEY, "true");
+        }
+        metadata.setValue(keyName, fingerprint);
+    }
+
+    @Override
+    public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode filterParams) {
+        JsonNode node = filterParams.get("keyName");
+        if (node != null && node.isTextual()) {
+            keyName = node.asText("simhash");
+        }
+        node = filterParams.get("keyNameCopy");
+        if (node != null && node.isTextual() && StringUtils.isNotBlank(node.asText(""))) {
+            copyKeyName = node.asText();
+        }
+        node = filterParams.get("shingleSize");
+        if (node != null) {
+            shingleSize = Math.max(1, node.asInt(shingleSize));
+        }
+        node = filterParams.get("maxDistance");
+        if (node != null) {
+            maxDistance = node.asInt(maxDistance);
+        }
+    }
+
+    /**
+     * Returns the SimHash of a text, using the shingles of <i>shingleSize</i> words as features. A
+     * text with fewer words has a single feature.
+     */
+    public static long fingerprint(String text, int shingleSize) {
+        final int[] weights = new int[64];
+        // hashes of the last words seen
+        final long[] window = new long[shingleSize];
+        int words = 0;
+
+        final int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // skip to the next word
+            int c = text.codePointAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                i += Character.charCount(c);
+                continue;
+            }
+            long h = FNV_OFFSET;
+            while (i < length) {
+                c = text.codePointAt(i);
+                if (!Character.isLetterOrDigit(c)) {
+                    break;
+                }
+                h = (h ^ Character.toLowerCase(c)) * FNV_PRIME;
+                i += Character.charCount(c);
+            }
+            window[words % shingleSize] = h;
+            words++;
+            if (words >= shingleSize) {
+                addFeature(weights, window, words, shingleSize);
+            }
+        }
+
+        if (words == 0) {
+            return 0L;
+        }
+        if (words < shingleSize) {
+            addFeature(weights, window, words, words);
+        }
+
+        long fingerprint = 0L;
+        for (int b = 0; b < 64; b++) {
+            if (weights[b] > 0) {
+                fingerprint |= 1L << b;
+            }
+        }
+        return fingerprint;
+    }
+
+    /** Adds the shingle made of the last <i>size</i> words */
+    private static void addFeature(int[] weights, long[] window, int words, int size) {
+        long h = 0L;
+        for (int j = words - size; j < words; j++) {
+            h = (h ^ window[j % window.length]) * FNV_PRIME;
+            h = Long.rotateLeft(h, 31);
+        }
+        // finalisation from MurmurHash3 to spread the bits
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        for (int b = 0; b < 64; b++) {
+            weights[b] += ((h >>> b) & 1L) != 0 ? 1 : -1;
+        }
+    }
+
+    /**
+     * Returns the number of bits which differ between two fingerprints in hexadecimal or -1 if one
+     * of them is null or not a valid fingerprint.
+     */
+    public static int distance(String fingerprint1, String fingerprint2) {
+        if (fingerprint1 == null
+                || fingerprint2 == null
+                || fingerprint1.length() != 16
+                || fingerprint2.length() != 16) {
+            return -1;
+        }
+        try {
+            return Long.bitCount(
+                    Long.parseUnsignedLong(fingerprint1, 16)
+                            ^ Long.parseUnsignedLong(fingerprint2, 16));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+}
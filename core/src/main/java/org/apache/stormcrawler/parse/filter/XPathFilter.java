@@ -25,6 +25,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -45,12 +47,16 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
  * Simple ParseFilter to illustrate and test the interface. Reads a XPATH pattern from the config
- * file and stores the value as metadata
+ * file and stores the value as metadata. Simple expressions of the form <code>//TAG</code> or
+ * <code>//*</code>, optionally with a predicate <code>[@attr]</code> or <code>[@attr="value"]
+ * </code> and followed by <code>/@attr</code>, are all matched during a single traversal of the
+ * document; the other ones are evaluated separately with the XPath engine.
  */
 public class XPathFilter extends ParseFilter {
 
@@ -71,16 +77,41 @@ public class XPathFilter extends ParseFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(XPathFilter.class);
 
-    private XPathFactory factory = XPathFactory.newInstance();
-    private XPath xpath = factory.newXPath();
+    /** The XPath objects are not thread safe, each thread compiles its own expressions */
+    private static final ThreadLocal<XPath> xpath =
+            ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
 
     protected final Map<String, List<LabelledExpression>> expressions = new HashMap<>();
 
+    /** Simple expressions matched during the common traversal, indexed by their position */
+    private final List<SimplePath> simplePaths = new ArrayList<>();
+
+    /** Simple expressions indexed by the name of the elements they select, except for * */
+    private final Map<String, List<SimplePath>> simplePathsByName = new HashMap<>();
+
+    /** Simple expressions selecting any element */
+    private final List<SimplePath> simplePathsAnyName = new ArrayList<>();
+
+    private static final String NAME = "[A-Za-z_][-A-Za-z0-9_.]*";
+
+    private static final Pattern SIMPLE_PATH =
+            Pattern.compile(
+                    "//(\\*|"
+                            + NAME
+                            + ")(?:\\[@("
+                            + NAME
+                            + ")(?:=(?:\"([^\"]*)\"|'([^']*)'))?\\])?(?:/@("
+                            + NAME
+                            + "))?");
+
     class LabelledExpression {
 
         String key;
         private EvalFunction evalFunction;
-        private XPathExpression expression;
+        private ThreadLocal<XPathExpression> expression;
+
+        /** Set if the expression is matched during the common traversal */
+        private SimplePath simplePath;
 
         private LabelledExpression(String key, String expression) throws XPathExpressionException {
             this.key = key;
@@ -91,12 +122,25 @@ public class XPathFilter extends ParseFilter {
                 evalFunction = EvalFunction.SERIALIZE;
             } else {
                 evalFunction = EvalFunction.NONE;
+                simplePath = SimplePath.compile(expression);
             }
-            this.expression = xpath.compile(expression);
+            // fails early if the expression is not valid
+            final XPathExpression compiled = xpath.get().compile(expression);
+            final String source = expression;
+            this.expression =
+                    ThreadLocal.withInitial(
+                            () -> {
+                                try {
+                                    return xpath.get().compile(source);
+                                } catch (XPathExpressionException e) {
+                                    throw new IllegalStateException(e);
+                                }
+                            });
+            this.expression.set(compiled);
         }
 
         List<String> evaluate(DocumentFragment doc) throws XPathExpressionException, IOException {
-            Object evalResult = expression.evaluate(doc, evalFunction.getReturnType());
+            Object evalResult = expression.get().evaluate(doc, evalFunction.getReturnType());
             List<String> values = new LinkedList<>();
             switch (evalFunction) {
                 case STRING:
@@ -158,13 +202,18 @@ public class XPathFilter extends ParseFilter {
         ParseData parseData = parse.get(URL);
         Metadata metadata = parseData.getMetadata();
 
+        final List<List<String>> selected = select(doc);
+
         // applies the XPATH expression in the order in which they are produced
         java.util.Iterator<List<LabelledExpression>> iter = expressions.values().iterator();
         while (iter.hasNext()) {
             List<LabelledExpression> leList = iter.next();
             for (LabelledExpression le : leList) {
                 try {
-                    List<String> values = le.evaluate(doc);
+                    List<String> values =
+                            le.simplePath != null && selected != null
+                                    ? selected.get(le.simplePath.index)
+                                    : le.evaluate(doc);
                     if (values != null && !values.isEmpty()) {
                         metadata.addValues(le.key, values);
                         break;
@@ -205,13 +254,178 @@ public class XPathFilter extends ParseFilter {
             }
             LabelledExpression lexpression = new LabelledExpression(key, xpathvalue);
             lexpressionList.add(lexpression);
+            SimplePath simplePath = lexpression.simplePath;
+            if (simplePath != null) {
+                simplePath.index = simplePaths.size();
+                simplePaths.add(simplePath);
+                if (simplePath.name == null) {
+                    simplePathsAnyName.add(simplePath);
+                } else {
+                    simplePathsByName
+                            .computeIfAbsent(simplePath.name, k -> new ArrayList<>())
+                            .add(simplePath);
+                }
+            }
         } catch (XPathExpressionException e) {
             throw new RuntimeException("Can't compile expression : " + xpathvalue, e);
         }
     }
 
+    /**
+     * Returns the values for all the simple expressions, collected during a single traversal of the
+     * document, or null if the document contains prefixed names, in which case all the expressions
+     * are evaluated with the XPath engine
+     */
+    private List<List<String>> select(DocumentFragment doc) {
+        final List<List<String>> selected = new ArrayList<>(simplePaths.size());
+        if (simplePaths.isEmpty()) {
+            return selected;
+        }
+        for (int i = 0; i < simplePaths.size(); i++) {
+            selected.add(new LinkedList<>());
+        }
+        // iterative walk in document order
+        Node node = doc.getFirstChild();
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                final Element element = (Element) node;
+                if (hasPrefixedName(element)) {
+                    return null;
+                }
+                final List<SimplePath> named = simplePathsByName.get(localName(element));
+                if (named != null && element.getNamespaceURI() == null) {
+                    for (SimplePath path : named) {
+                        path.select(element, selected.get(path.index));
+                    }
+                }
+                for (SimplePath path : simplePathsAnyName) {
+                    path.select(element, selected.get(path.index));
+                }
+            }
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+                continue;
+            }
+            while (node != null && node.getNextSibling() == null) {
+                node = node.getParentNode();
+                if (node == doc) {
+                    node = null;
+                }
+            }
+            if (node != null) {
+                node = node.getNextSibling();
+            }
+        }
+        return selected;
+    }
+
+    /** Name of the node as used by the XPath name tests */
+    private static String localName(Node node) {
+        String name = node.getLocalName();
+        return name != null ? name : node.getNodeName();
+    }
+
+    /**
+     * Whether the element or one of its attributes has a name with a prefix, the XPath engine is
+     * not consistent in how it matches them
+     */
+    private static boolean hasPrefixedName(Element element) {
+        if (element.getNodeName().indexOf(':') != -1) {
+            return true;
+        }
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            if (attributes.item(i).getNodeName().indexOf(':') != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expression which can be matched against each element during a single traversal of the
+     * document
+     */
+    private static final class SimplePath {
+
+        /** Name of the elements selected or null for any */
+        private final String name;
+
+        private final String predicateAttribute;
+
+        /** Value of the attribute in the predicate or null if it just needs to exist */
+        private final String predicateValue;
+
+        /** Name of the attribute to return or null for the text of the element */
+        private final String attribute;
+
+        private int index;
+
+        private SimplePath(
+                String name, String predicateAttribute, String predicateValue, String attribute) {
+            this.name = name;
+            this.predicateAttribute = predicateAttribute;
+            this.predicateValue = predicateValue;
+            this.attribute = attribute;
+        }
+
+        /** Returns a SimplePath for the expression or null if it is not simple enough */
+        static SimplePath compile(String expression) {
+            Matcher m = SIMPLE_PATH.matcher(expression);
+            if (!m.matches()) {
+                return null;
+            }
+            String name = m.group(1).equals("*") ? null : m.group(1);
+            String value = m.group(3) != null ? m.group(3) : m.group(4);
+            return new SimplePath(name, m.group(2), value, m.group(5));
+        }
+
+        /** Adds the value for the element if it matches */
+        void select(Element element, List<String> values) {
+            if (predicateAttribute != null) {
+                boolean found = false;
+                NamedNodeMap attributes = element.getAttributes();
+                for (int i = 0; i < attributes.getLength() && !found; i++) {
+                    Node attr = attributes.item(i);
+                    found =
+                            isAttribute(attr, predicateAttribute)
+                                    && (predicateValue == null
+                                            || predicateValue.equals(attr.getNodeValue()));
+                }
+                if (!found) {
+                    return;
+                }
+            }
+            if (attribute == null) {
+                values.add(StringUtils.strip(element.getTextContent()));
+                return;
+            }
+            NamedNodeMap attributes = element.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attr = attributes.item(i);
+                if (isAttribute(attr, attribute)) {
+                    values.add(StringUtils.strip(attr.getNodeValue()));
+                }
+            }
+        }
+
+        /** Namespace declarations are not attributes for XPath */
+        private static boolean isAttribute(Node attr, String name) {
+            final String nodeName = attr.getNodeName();
+            return attr.getNamespaceURI() == null
+                    && !nodeName.equals("xmlns")
+                    && !nodeName.startsWith("xmlns:")
+                    && name.equals(localName(attr));
+        }
+    }
+
     @Override
     public boolean needsDOM() {
         return true;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -23,8 +23,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.storm.Config;
 import org.apache.storm.metric.api.MultiCountMetric;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
@@ -32,8 +35,10 @@ import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.base.BaseRichSpout;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.utils.Utils;
+import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.persistence.urlbuffer.URLBuffer;
 import org.apache.stormcrawler.util.CollectionMetric;
+import org.apache.stormcrawler.util.ConcurrentMultiCountMetric;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +48,21 @@ import org.slf4j.LoggerFactory;
  * processes, with an optional delay before they are removed from the cache. Throttles the rate a
  * which queries are emitted and provides a buffer to store the URLs waiting to be sent.
  *
+ * <p>When <i>spout.buffer.low.watermark</i> is set, the next query is sent as soon as the number of
+ * URLs in the buffer drops to that value, in a separate thread for the implementations doing
+ * synchronous calls, so that the buffer gets refilled before it is empty. The URLs are then added
+ * to the buffer while others get emitted; implementations should use {@link #addToBuffer(String,
+ * Metadata, String)} so that URLs being processed are not added again.
+ *
+ * <p>Up to <i>spout.emit.batch.size</i> URLs are emitted per call to nextTuple, within the limit of
+ * <i>topology.max.spout.pending</i>. When there is nothing to emit, the spout sleeps for 1 msec,
+ * doubling with every idle call up to <i>spout.idle.sleep.max</i> msec.
+ *
+ * <p>Setting <i>spout.inprocess.fingerprints</i> to true tracks the URLs being processed and the
+ * ones in the purgatory with 64 bit fingerprints instead of the URLs themselves, which takes a
+ * fraction of the memory when there are many pending tuples, see {@link InProcessFingerprints} for
+ * the behaviour in case of collisions.
+ *
  * @since 1.11
  */
 public abstract class AbstractQueryingSpout extends BaseRichSpout {
@@ -77,10 +97,44 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
 
     protected int resetFetchDateAfterNSecs = 120;
 
+    /**
+     * Number of URLs in the buffer below which the next query is sent without waiting for the
+     * buffer to be empty. Default -1, deactivated.
+     */
+    protected static final String LowWatermarkParamName = "spout.buffer.low.watermark";
+
+    protected int lowWatermark = -1;
+
+    /** Max number of URLs emitted per call to nextTuple. Default 1. */
+    protected static final String EmitBatchSizeParamName = "spout.emit.batch.size";
+
+    protected int emitBatchSize = 1;
+
+    /** Max time in msec to sleep for when there is nothing to emit. Default 10. */
+    protected static final String MaxIdleSleepParamName = "spout.idle.sleep.max";
+
+    protected long maxIdleSleep = 10;
+
+    /**
+     * Whether to track the URLs being processed by their fingerprints instead of keeping the URLs.
+     * Default false.
+     */
+    protected static final String InProcessFingerprintsParamName = "spout.inprocess.fingerprints";
+
+    private long idleSleep = 0;
+
+    private int maxSpoutPending = -1;
+
+    /** Runs the queries triggered by the low watermark */
+    private ExecutorService prefetchExecutor;
+
+    /** Whether populateBuffer is being called by the prefetchExecutor */
+    private final AtomicBoolean isPrefetching = new AtomicBoolean(false);
+
     protected Instant lastTimeResetToNOW;
 
     private long timeLastQuerySent = 0;
-    private long timeLastQueryReceived = 0;
+    private volatile long timeLastQueryReceived = 0;
 
     private long timestampEmptyBuffer = -1;
 
@@ -108,9 +162,14 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         maxDelayBetweenQueries =
                 ConfUtils.getLong(stormConf, StatusMaxDelayParamName, maxDelayBetweenQueries);
 
-        beingProcessed = new InProcessMap<>(ttlPurgatory, TimeUnit.SECONDS);
+        if (ConfUtils.getBoolean(stormConf, InProcessFingerprintsParamName, false)) {
+            beingProcessed = new FingerprintInProcessMap(ttlPurgatory, TimeUnit.SECONDS);
+        } else {
+            beingProcessed = new InProcessMap<>(ttlPurgatory, TimeUnit.SECONDS);
+        }
 
-        eventCounter = context.registerMetric("counters", new MultiCountMetric(), 10);
+        // can be updated from the threads populating the buffer
+        eventCounter = context.registerMetric("counters", new ConcurrentMultiCountMetric(), 10);
 
         buffer = URLBuffer.createInstance(stormConf);
 
@@ -126,6 +185,22 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         resetFetchDateAfterNSecs =
                 ConfUtils.getInt(stormConf, resetFetchDateParamName, resetFetchDateAfterNSecs);
 
+        lowWatermark = ConfUtils.getInt(stormConf, LowWatermarkParamName, lowWatermark);
+        if (lowWatermark > 0) {
+            final String threadName = "spout-prefetch-" + context.getThisTaskId();
+            prefetchExecutor =
+                    Executors.newSingleThreadExecutor(
+                            r -> {
+                                Thread t = new Thread(r, threadName);
+                                t.setDaemon(true);
+                                return t;
+                            });
+        }
+
+        emitBatchSize = Math.max(1, ConfUtils.getInt(stormConf, EmitBatchSizeParamName, 1));
+        maxIdleSleep = ConfUtils.getLong(stormConf, MaxIdleSleepParamName, maxIdleSleep);
+        maxSpoutPending = ConfUtils.getInt(stormConf, Config.TOPOLOGY_MAX_SPOUT_PENDING, -1);
+
         _collector = collector;
     }
 
@@ -145,7 +220,10 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
 
     private boolean active;
 
-    /** Map which holds elements some additional time after the removal. */
+    /**
+     * Map which holds elements some additional time after the removal. Thread safe as it can be
+     * read by the threads populating the buffer.
+     */
     public class InProcessMap<K, V> extends HashMap<K, V> {
 
         private final Cache<K, Optional<V>> deletionCache;
@@ -154,8 +232,13 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
             deletionCache = Caffeine.newBuilder().expireAfterWrite(maxDuration, timeUnit).build();
         }
 
+        /** For implementations keeping track of the entries themselves */
+        protected InProcessMap() {
+            deletionCache = null;
+        }
+
         @Override
-        public boolean containsKey(Object key) {
+        public synchronized boolean containsKey(Object key) {
             boolean inCache = super.containsKey(key);
             if (!inCache) {
                 inCache = deletionCache.getIfPresent((K) key) != null;
@@ -164,22 +247,77 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         }
 
         @Override
-        public V remove(Object key) {
+        public synchronized V put(K key, V value) {
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized V remove(Object key) {
             deletionCache.put((K) key, Optional.empty());
             return super.remove(key);
         }
 
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
         public long inCache() {
             return deletionCache.estimatedSize();
         }
     }
 
+    /**
+     * Keeps only the fingerprints of the URLs and none of the values. Supports only the methods
+     * used for tracking the URLs i.e. containsKey, put, remove, size and inCache.
+     */
+    public class FingerprintInProcessMap extends InProcessMap<String, Object> {
+
+        private final InProcessFingerprints fingerprints;
+
+        public FingerprintInProcessMap(long maxDuration, TimeUnit timeUnit) {
+            fingerprints = new InProcessFingerprints(maxDuration, timeUnit);
+        }
+
+        @Override
+        public synchronized boolean containsKey(Object key) {
+            return fingerprints.contains(key.toString());
+        }
+
+        @Override
+        public synchronized Object put(String key, Object value) {
+            fingerprints.add(key);
+            return null;
+        }
+
+        @Override
+        public synchronized Object remove(Object key) {
+            fingerprints.remove(key.toString());
+            return null;
+        }
+
+        @Override
+        public synchronized int size() {
+            return fingerprints.size();
+        }
+
+        @Override
+        public synchronized boolean isEmpty() {
+            return fingerprints.size() == 0;
+        }
+
+        @Override
+        public synchronized long inCache() {
+            return fingerprints.inPurgatory();
+        }
+    }
+
     @Override
     public void nextTuple() {
         if (!active) return;
 
         // force the refresh of the buffer even if the buffer is not empty
-        if (!isInQuery.get() && triggerQueries()) {
+        if (!isQuerying() && triggerQueries()) {
             populateBuffer();
             timeLastQuerySent = System.currentTimeMillis();
         }
@@ -192,21 +330,38 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
                         .incrBy(System.currentTimeMillis() - timestampEmptyBuffer);
                 timestampEmptyBuffer = -1;
             }
-            List<Object> fields = buffer.next();
-            String url = fields.get(0).toString();
-            this._collector.emit(fields, url);
-            beingProcessed.put(url, null);
-            eventCounter.scope("emitted").incrBy(1);
-            return;
+            int budget = getEmitBudget();
+            int emitted = 0;
+            while (emitted < budget) {
+                List<Object> fields;
+                String url;
+                // the URL must not be added back while it is moved to beingProcessed
+                synchronized (beingProcessed) {
+                    fields = buffer.next();
+                    if (fields == null) {
+                        break;
+                    }
+                    url = fields.get(0).toString();
+                    beingProcessed.put(url, null);
+                }
+                this._collector.emit(fields, url);
+                emitted++;
+            }
+            if (emitted > 0) {
+                eventCounter.scope("emitted").incrBy(emitted);
+                idleSleep = 0;
+                prefetch();
+                return;
+            }
         } else if (timestampEmptyBuffer == -1) {
             timestampEmptyBuffer = System.currentTimeMillis();
         }
 
-        if (isInQuery.get() || throttleQueries() > 0) {
+        if (isQuerying() || throttleQueries() > 0 || buffer.hasNext()) {
             // sleep for a bit but not too much in order to give ack/fail a
             // chance
             LOG.trace("isInQuery {}", isInQuery);
-            Utils.sleep(10);
+            idle();
             return;
         }
 
@@ -216,6 +371,77 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         timeLastQuerySent = System.currentTimeMillis();
     }
 
+    /**
+     * Number of URLs which can be emitted in a call to nextTuple, at least one as Storm calls it
+     * only if the number of pending tuples is below its max.
+     */
+    private int getEmitBudget() {
+        if (emitBatchSize == 1 || maxSpoutPending <= 0) {
+            return emitBatchSize;
+        }
+        return Math.max(1, Math.min(emitBatchSize, maxSpoutPending - beingProcessed.size()));
+    }
+
+    /** Sleeps for an increasing amount of time while there is nothing to emit */
+    private void idle() {
+        idleSleep = idleSleep == 0 ? 1 : Math.min(idleSleep * 2, maxIdleSleep);
+        if (idleSleep > 0) {
+            Utils.sleep(idleSleep);
+        }
+    }
+
+    /** Whether a query is in progress, either asynchronous or run by the prefetching thread */
+    private boolean isQuerying() {
+        return isInQuery.get() || isPrefetching.get();
+    }
+
+    /**
+     * Sends the next query in the prefetching thread if the buffer is below the low watermark, so
+     * that the spout keeps emitting while the query is running.
+     */
+    private void prefetch() {
+        if (prefetchExecutor == null
+                || isQuerying()
+                || buffer.size() > lowWatermark
+                || throttleQueries() > 0) {
+            return;
+        }
+        isPrefetching.set(true);
+        timeLastQuerySent = System.currentTimeMillis();
+        eventCounter.scope("prefetch").incrBy(1);
+        prefetchExecutor.execute(
+                () -> {
+                    try {
+                        populateBuffer();
+                    } catch (Exception e) {
+                        LOG.error("Exception caught while populating the buffer", e);
+                    } finally {
+                        isPrefetching.set(false);
+                    }
+                });
+    }
+
+    /**
+     * Adds a URL to the buffer unless it is being processed. The check and the addition are atomic
+     * so that a URL emitted while the results of a query are being added does not get back into the
+     * buffer.
+     *
+     * @return true if the URL was added
+     */
+    protected boolean addToBuffer(String url, Metadata metadata, String key) {
+        synchronized (beingProcessed) {
+            if (beingProcessed.containsKey(url)) {
+                return false;
+            }
+            return buffer.add(url, metadata, key);
+        }
+    }
+
+    /** Same as {@link #addToBuffer(String, Metadata, String)} using the default key */
+    protected boolean addToBuffer(String url, Metadata metadata) {
+        return addToBuffer(url, metadata, null);
+    }
+
     /**
      * Returns the amount of time to wait if the backend was queried too recently and needs
      * throttling or -1 if the backend can be queried straight away.
@@ -256,6 +482,16 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         timeLastQueryReceived = System.currentTimeMillis();
     }
 
+    @Override
+    public void close() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
     @Override
     public void activate() {
         active = true;
@@ -20,12 +20,16 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.time.DateUtils;
+import org.apache.storm.Config;
 import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
@@ -34,15 +38,25 @@ import org.apache.storm.topology.base.BaseRichBolt;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.DocumentIDGenerator;
 import org.apache.stormcrawler.util.MetadataTransfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Abstract bolt used to store the status of URLs. Uses the DefaultScheduler and MetadataTransfer.
+ *
+ * <p>The updates are passed to {@link #store(String, Status, Metadata, Optional, Tuple)} one at a
+ * time. Implementations which can write several updates at once can override {@link
+ * #supportsBatch()} and {@link #storeBatch(List)}, which gets called instead with batches of up to
+ * <i>status.updater.batch.size</i> updates, fewer if their total size reaches
+ * <i>status.updater.batch.max.bytes</i> or if the oldest one has been waiting for more than
+ * <i>status.updater.batch.max.age.msec</i>. The tuples are then acked or failed based on the result
+ * of the batch.
  */
 public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
 
@@ -64,6 +78,20 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
      */
     public static String cacheConfigParamName = "status.updater.cache.spec";
 
+    /**
+     * Parameter name to use a {@link FingerprintCache} of fixed size instead of the Caffeine cache
+     * configured with {@link #cacheConfigParamName}. Default false.
+     */
+    public static final String fingerprintCacheParamName = "status.updater.cache.fingerprints";
+
+    /** Memory used by the {@link FingerprintCache}, in bytes. Default 16MB. */
+    public static final String fingerprintCacheMaxBytesParamName =
+            "status.updater.cache.fingerprints.max.bytes";
+
+    /** Time in seconds after which a generation of the {@link FingerprintCache} is replaced. */
+    public static final String fingerprintCacheTTLParamName =
+            "status.updater.cache.fingerprints.ttl.sec";
+
     /**
      * Used for rounding nextFetchDates. Values are hour, minute or second, the latter is the
      * default value.
@@ -78,12 +106,27 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
     public static final String AS_IS_NEXTFETCHDATE_METADATA =
             "status.store.as.is.with.nextfetchdate";
 
+    /**
+     * Max number of updates to pass to {@link #storeBatch(List)}. Default 1, in which case the
+     * updates are stored one at a time even if the implementation supports batches.
+     */
+    public static final String batchSizeParamName = "status.updater.batch.size";
+
+    /** Approximate max size in bytes of the URLs and metadata in a batch. Default -1, no limit. */
+    public static final String batchMaxBytesParamName = "status.updater.batch.max.bytes";
+
+    /** Max time in msec an update can wait in a batch before it gets stored. Default 2000. */
+    public static final String batchMaxAgeParamName = "status.updater.batch.max.age.msec";
+
     protected OutputCollector _collector;
 
     private Scheduler scheduler;
+
+    private DocumentIDGenerator documentIDGenerator;
     private MetadataTransfer mdTransfer;
 
     private Cache<Object, Object> cache;
+    private FingerprintCache fingerprintCache;
     private boolean useCache = true;
 
     private int maxFetchErrors = 3;
@@ -93,6 +136,20 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
 
     private int roundDateUnit = Calendar.SECOND;
 
+    private boolean batching = false;
+
+    private int batchSize = 1;
+
+    private long batchMaxBytes = -1;
+
+    private long batchMaxAge = 2000;
+
+    private final List<StatusUpdate> batch = new ArrayList<>();
+
+    private long batchBytes = 0;
+
+    private long batchStartTime = 0;
+
     @Override
     public void prepare(
             Map<String, Object> stormConf, TopologyContext context, OutputCollector collector) {
@@ -102,21 +159,38 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
 
         mdTransfer = MetadataTransfer.getInstance(stormConf);
 
+        documentIDGenerator = DocumentIDGenerator.getInstance(stormConf, "status.updater");
+
         useCache = ConfUtils.getBoolean(stormConf, useCacheParamName, true);
 
-        if (useCache) {
+        if (useCache && ConfUtils.getBoolean(stormConf, fingerprintCacheParamName, false)) {
+            long maxBytes =
+                    ConfUtils.getLong(stormConf, fingerprintCacheMaxBytesParamName, 16L << 20);
+            long ttl = ConfUtils.getLong(stormConf, fingerprintCacheTTLParamName, 3600);
+            fingerprintCache = new FingerprintCache(maxBytes, ttl, TimeUnit.SECONDS);
+        } else if (useCache) {
             String spec = ConfUtils.getString(stormConf, cacheConfigParamName);
             cache = Caffeine.from(spec).build();
+        }
+
+        if (useCache) {
 
             context.registerMetric(
                     "cache",
                     new IMetric() {
                         @Override
                         public Object getValueAndReset() {
-                            Map<String, Long> statsMap = new HashMap<>();
+                            Map<String, Number> statsMap = new HashMap<>();
                             statsMap.put("hits", cacheHits);
                             statsMap.put("misses", cacheMisses);
-                            statsMap.put("size", cache.estimatedSize());
+                            if (fingerprintCache != null) {
+                                statsMap.put("size", fingerprintCache.size());
+                                statsMap.put(
+                                        "false.positive.probability",
+                                        fingerprintCache.falsePositiveProbability());
+                            } else {
+                                statsMap.put("size", cache.estimatedSize());
+                            }
                             cacheHits = 0;
                             cacheMisses = 0;
                             return statsMap;
@@ -133,11 +207,35 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         } else if (tmpdateround.equalsIgnoreCase("HOUR")) {
             roundDateUnit = Calendar.HOUR;
         }
+
+        batchSize = ConfUtils.getInt(stormConf, batchSizeParamName, 1);
+        batchMaxBytes = ConfUtils.getLong(stormConf, batchMaxBytesParamName, -1);
+        batchMaxAge = ConfUtils.getLong(stormConf, batchMaxAgeParamName, 2000);
+        if (batchSize > 1) {
+            if (supportsBatch()) {
+                batching = true;
+            } else {
+                LOG.warn(
+                        "{} does not support batches, ignoring {}",
+                        getClass().getName(),
+                        batchSizeParamName);
+            }
+        }
     }
 
     @Override
     public void execute(Tuple tuple) {
 
+        if (TupleUtils.isTick(tuple)) {
+            if (batching
+                    && !batch.isEmpty()
+                    && System.currentTimeMillis() - batchStartTime >= batchMaxAge) {
+                storeBatch();
+            }
+            _collector.ack(tuple);
+            return;
+        }
+
         String url = tuple.getStringByField("url");
         Status status = (Status) tuple.getValueByField("status");
 
@@ -148,7 +246,11 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         // if so we've already seen it and don't need to
         // store it again
         if (potentiallyNew && useCache) {
-            if (cache.getIfPresent(url) != null) {
+            boolean cached =
+                    fingerprintCache != null
+                            ? fingerprintCache.contains(url)
+                            : cache.getIfPresent(url) != null;
+            if (cached) {
                 // no need to add it to the queue
                 LOG.debug("URL {} already in cache", url);
                 cacheHits++;
@@ -167,14 +269,8 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         String dateInMetadata = metadata.getFirstValue(AS_IS_NEXTFETCHDATE_METADATA);
         if (dateInMetadata != null) {
             Date nextFetch = Date.from(Instant.parse(dateInMetadata));
-            try {
-                store(url, status, mdTransfer.filter(metadata), Optional.of(nextFetch), tuple);
-                return;
-            } catch (Exception e) {
-                LOG.error("Exception caught when storing", e);
-                _collector.fail(tuple);
-                return;
-            }
+            storeOrBatch(url, status, mdTransfer.filter(metadata), Optional.of(nextFetch), tuple);
+            return;
         }
 
         // store last processed or discovery date in UTC
@@ -232,7 +328,29 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         }
 
         // extensions of this class will handle the storage
-        // on a per document basis
+        // on a per document basis or in batches
+        storeOrBatch(url, status, metadata, nextFetch, tuple);
+    }
+
+    private void storeOrBatch(
+            String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple tuple) {
+        if (batching) {
+            StatusUpdate update = new StatusUpdate(url, status, metadata, nextFetch, tuple);
+            long now = System.currentTimeMillis();
+            if (batch.isEmpty()) {
+                batchStartTime = now;
+            }
+            batch.add(update);
+            if (batchMaxBytes > 0) {
+                batchBytes += update.estimateSize();
+            }
+            if (batch.size() >= batchSize
+                    || (batchMaxBytes > 0 && batchBytes >= batchMaxBytes)
+                    || now - batchStartTime >= batchMaxAge) {
+                storeBatch();
+            }
+            return;
+        }
         try {
             store(url, status, metadata, nextFetch, tuple);
         } catch (Exception e) {
@@ -241,21 +359,47 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         }
     }
 
+    /** Stores the current batch then acks or fails its tuples */
+    private void storeBatch() {
+        List<StatusUpdate> updates = new ArrayList<>(batch);
+        batch.clear();
+        batchBytes = 0;
+        try {
+            storeBatch(updates);
+        } catch (Exception e) {
+            LOG.error("Exception caught when storing a batch of {} updates", updates.size(), e);
+            for (StatusUpdate update : updates) {
+                _collector.fail(update.getTuple());
+            }
+            return;
+        }
+        for (StatusUpdate update : updates) {
+            if (update.isFailed()) {
+                _collector.fail(update.getTuple());
+            } else {
+                ack(update.getTuple(), update.getURL());
+            }
+        }
+    }
+
     /**
      * Get the document id.
      *
      * @param metadata The {@link Metadata}.
      * @param url The normalised url.
-     * @return Return the normalised url SHA-256 digest as String.
+     * @return Return the ID given by the {@link DocumentIDGenerator}, by default the normalised url
+     *     SHA-256 digest as String.
      */
     protected String getDocumentID(Metadata metadata, String url) {
-        return org.apache.commons.codec.digest.DigestUtils.sha256Hex(url);
+        return documentIDGenerator.getID(metadata, url);
     }
 
     /** Must be called by extending classes to store and collect in one go */
     protected final void ack(Tuple t, String url) {
         // keep the URL in the cache
-        if (useCache) {
+        if (fingerprintCache != null) {
+            fingerprintCache.put(url);
+        } else if (useCache) {
             cache.put(url, "");
         }
 
@@ -266,8 +410,104 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
             String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple t)
             throws Exception;
 
+    /**
+     * Stores a batch of updates. Unlike {@link #store(String, Status, Metadata, Optional, Tuple)},
+     * the tuples must not be acked or failed by the implementation: they are all failed if an
+     * exception is thrown and acked otherwise, apart from the updates marked with {@link
+     * StatusUpdate#fail()}. A batch can contain several updates for the same URL, in the order in
+     * which they were received.
+     */
+    protected void storeBatch(List<StatusUpdate> updates) throws Exception {
+        throw new UnsupportedOperationException("Batches not supported by " + getClass());
+    }
+
+    /**
+     * Whether the implementation can store several updates at once with {@link
+     * #storeBatch(List)}. Default false.
+     */
+    protected boolean supportsBatch() {
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        Config conf = new Config();
+        if (supportsBatch()) {
+            // used to store the batches which have been waiting for too long
+            conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, 1);
+        }
+        return conf;
+    }
+
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
         declarer.declareStream(Constants.DELETION_STREAM_NAME, new Fields("url", "metadata"));
     }
+
+    /** Update of the status of a URL, as passed to {@link #storeBatch(List)} */
+    public static class StatusUpdate {
+
+        private final String url;
+        private final Status status;
+        private final Metadata metadata;
+        private final Optional<Date> nextFetch;
+        private final Tuple tuple;
+        private boolean failed = false;
+
+        StatusUpdate(
+                String url,
+                Status status,
+                Metadata metadata,
+                Optional<Date> nextFetch,
+                Tuple tuple) {
+            this.url = url;
+            this.status = status;
+            this.metadata = metadata;
+            this.nextFetch = nextFetch;
+            this.tuple = tuple;
+        }
+
+        public String getURL() {
+            return url;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Metadata getMetadata() {
+            return metadata;
+        }
+
+        public Optional<Date> getNextFetch() {
+            return nextFetch;
+        }
+
+        public Tuple getTuple() {
+            return tuple;
+        }
+
+        /** Marks the update as failed so that its tuple gets failed instead of acked */
+        public void fail() {
+            failed = true;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /** Approximate size in bytes of the URL and metadata */
+        long estimateSize() {
+            long size = url.length();
+            for (String key : metadata.keySet()) {
+                size += key.length();
+                for (String value : metadata.getValues(key)) {
+                    if (value != null) {
+                        size += value.length();
+                    }
+                }
+            }
+            return size;
+        }
+    }
 }
@@ -26,6 +26,7 @@ import java.util.TimeZone;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.filter.MD5SignatureParseFilter;
+import org.apache.stormcrawler.parse.filter.SimHashParseFilter;
 import org.apache.stormcrawler.protocol.HttpHeaders;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.slf4j.LoggerFactory;
@@ -117,6 +118,17 @@ import org.slf4j.LoggerFactory;
  * </pre>
  *
  * The order is mandatory: first copy the old signature, than generate the current one.
+ *
+ * <p>Alternatively, the {@link SimHashParseFilter} can generate the signature, with the same
+ * &quot;keyName&quot; and &quot;keyNameCopy&quot;, so that pages which differ only by a few words
+ * are considered unchanged. The max number of bits differing between two SimHash fingerprints of an
+ * unchanged page is set with
+ *
+ * <pre>
+ * scheduler.adaptive.signature.max.distance: 3
+ * </pre>
+ *
+ * The default value of 0 requires the signatures to be identical.
  */
 public class AdaptiveScheduler extends DefaultScheduler {
 
@@ -146,6 +158,13 @@ public class AdaptiveScheduler extends DefaultScheduler {
      */
     public static final String INTERVAL_DEC_RATE = "scheduler.adaptive.fetchInterval.rate.decr";
 
+    /**
+     * Configuration property (int) to set the max number of bits which can differ between the
+     * SimHash fingerprints of a page for it to be considered unchanged. Defaults to 0, i.e. the
+     * signatures must be identical.
+     */
+    public static final String SIGNATURE_MAX_DISTANCE = "scheduler.adaptive.signature.max.distance";
+
     /**
      * Name of the signature key in metadata, must be defined as &quot;keyName&quot; in the
      * configuration of {@link org.apache.stormcrawler.parse.filter.MD5SignatureParseFilter} . This
@@ -180,6 +199,8 @@ public class AdaptiveScheduler extends DefaultScheduler {
     protected float fetchIntervalDecRate = .5f;
     protected float fetchIntervalIncRate = .5f;
 
+    protected int signatureMaxDistance = 0;
+
     protected boolean setLastModified = false;
     protected boolean overwriteLastModified = false;
 
@@ -194,6 +215,7 @@ public class AdaptiveScheduler extends DefaultScheduler {
                 ConfUtils.getFloat(stormConf, INTERVAL_DEC_RATE, fetchIntervalDecRate);
         fetchIntervalIncRate =
                 ConfUtils.getFloat(stormConf, INTERVAL_INC_RATE, fetchIntervalIncRate);
+        signatureMaxDistance = ConfUtils.getInt(stormConf, SIGNATURE_MAX_DISTANCE, 0);
         super.init(stormConf);
     }
 
@@ -258,6 +280,8 @@ public class AdaptiveScheduler extends DefaultScheduler {
             return nextFetch;
         } else if (signature.equals(oldSignature)) {
             // unchanged
+        } else if (isNearDuplicate(signature, oldSignature)) {
+            // near duplicate, considered unchanged
         } else {
             // change detected by signature comparison
             changed = true;
@@ -315,4 +339,16 @@ public class AdaptiveScheduler extends DefaultScheduler {
 
         return Optional.of(now.getTime());
     }
+
+    /**
+     * Returns true if the signatures are SimHash fingerprints differing by no more than the max
+     * distance allowed
+     */
+    protected boolean isNearDuplicate(String signature, String oldSignature) {
+        if (signatureMaxDistance <= 0) {
+            return false;
+        }
+        int distance = SimHashParseFilter.distance(signature, oldSignature);
+        return distance != -1 && distance <= signatureMaxDistance;
+    }
 }
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.protocol.HttpHeaders;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler estimating how often a page changes from the history of its fetches and choosing the
+ * next fetch date so that the copy of the page is fresh for a configurable share of the time, within
+ * a fetch budget.
+ *
+ * <p>Changes are detected by signature comparison as with the {@link AdaptiveScheduler}, which
+ * needs the same metadata and parse filters. The changes of a page are assumed to follow a Poisson
+ * process. Its rate is estimated from the number of fetches <i>n</i>, the number of fetches which
+ * found the page changed <i>X</i> and the mean interval between fetches <i>I</i> with the estimator
+ * of Cho and Garcia-Molina, which accounts for several changes within the same interval: <i>rate =
+ * -ln((n - X + 0.5) / (n + 0.5)) / I</i>. The counts and the time observed are multiplied by a
+ * decay factor at each fetch so that the estimate follows pages whose rate of change varies. The
+ * history of a page starts with half a change over the default fetch interval (or the custom one
+ * which applies), so that the first fetches are scheduled as with the {@link DefaultScheduler}.
+ *
+ * <p>The next interval is the longest of two:
+ *
+ * <ul>
+ *   <li>the one for which the expected share of the time during which the page is unchanged since
+ *       the last fetch, <i>(1 - e<sup>-rate.interval</sup>) / (rate.interval)</i>, equals the
+ *       freshness target: fetching more often is not needed
+ *   <li>the one for which fetching more often would bring less than
+ *       <i>scheduler.changerate.fetch.min.fresh.minutes</i> minutes of freshness per additional
+ *       fetch: fetching more often is not worth the budget. Following Cho and Garcia-Molina, this
+ *       is the allocation of a given number of fetches which gives the best freshness overall. It
+ *       fetches the pages which change moderately more often than the ones which change a lot,
+ *       which are left at the max interval when they change more than once per min fresh minutes,
+ *       as their copy would be stale most of the time anyway. Set to 0 to only use the freshness
+ *       target.
+ * </ul>
+ *
+ * <p>The interval is bounded by the min and max fetch intervals of the {@link AdaptiveScheduler}.
+ *
+ * <p>The history is kept in the metadata under {@value #CHANGE_RATE_KEY} as four numbers: the
+ * decayed number of fetches, the decayed number of changes, the decayed time observed in minutes
+ * and the time of the last fetch in milliseconds since the epoch. This key must be listed in
+ * &quot;metadata.persist&quot;, in addition to the ones needed by the {@link AdaptiveScheduler}.
+ *
+ * <pre>
+ * scheduler.class: "org.apache.stormcrawler.persistence.ChangeRateScheduler"
+ * # share of the time a page should be unchanged since it was last fetched
+ * scheduler.changerate.freshness.target: 0.9
+ * # min minutes of freshness an additional fetch must bring
+ * scheduler.changerate.fetch.min.fresh.minutes: 120
+ * # weight of the past fetches, the estimate is based on about 1 / (1 - decay) fetches
+ * scheduler.changerate.history.decay: 0.9
+ * </pre>
+ *
+ * @since 3.1
+ */
+public class ChangeRateScheduler extends AdaptiveScheduler {
+
+    /** Configuration property (float) for the share of the time a page should be fresh. */
+    public static final String FRESHNESS_TARGET = "scheduler.changerate.freshness.target";
+
+    /**
+     * Configuration property (int) for the min number of minutes during which a page is fresh that
+     * an additional fetch must bring, which sets the fetch budget.
+     */
+    public static final String MIN_FRESH_MINUTES = "scheduler.changerate.fetch.min.fresh.minutes";
+
+    /** Configuration property (float) for the factor applied to the history at each fetch. */
+    public static final String HISTORY_DECAY = "scheduler.changerate.history.decay";
+
+    /** Key to store the history of the changes, must be listed in &quot;metadata.persist&quot;. */
+    public static final String CHANGE_RATE_KEY = "changeRate";
+
+    private static final org.slf4j.Logger LOG =
+            LoggerFactory.getLogger(ChangeRateScheduler.class);
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    protected float freshnessTarget = 0.9f;
+
+    protected float historyDecay = 0.9f;
+
+    protected int minFreshMinutes = 120;
+
+    /** Product of the change rate and the interval which gives the freshness target */
+    private double rateIntervalProduct;
+
+    @Override
+    public void init(Map<String, Object> stormConf) {
+        super.init(stormConf);
+        freshnessTarget = ConfUtils.getFloat(stormConf, FRESHNESS_TARGET, freshnessTarget);
+        historyDecay = ConfUtils.getFloat(stormConf, HISTORY_DECAY, historyDecay);
+        minFreshMinutes = ConfUtils.getInt(stormConf, MIN_FRESH_MINUTES, minFreshMinutes);
+        if (freshnessTarget <= 0 || freshnessTarget >= 1) {
+            throw new IllegalArgumentException(
+                    FRESHNESS_TARGET + " must be between 0 and 1, got " + freshnessTarget);
+        }
+        if (historyDecay <= 0 || historyDecay > 1) {
+            throw new IllegalArgumentException(
+                    HISTORY_DECAY + " must be between 0 excluded and 1, got " + historyDecay);
+        }
+        rateIntervalProduct = solveFreshness(freshnessTarget);
+    }
+
+    @Override
+    public Optional<Date> schedule(Status status, Metadata metadata) {
+        return schedule(status, metadata, System.currentTimeMillis());
+    }
+
+    Optional<Date> schedule(Status status, Metadata metadata, long now) {
+        if (status != Status.FETCHED) {
+            if (status == Status.ERROR) {
+                metadata.remove(CHANGE_RATE_KEY);
+            }
+            // resets the signatures and falls back to the DefaultScheduler
+            return super.schedule(status, metadata);
+        }
+
+        History history = History.parse(metadata.getFirstValue(CHANGE_RATE_KEY));
+        if (history == null) {
+            // first fetch or history lost
+            history = new History(initialInterval(metadata));
+        } else {
+            observe(history, metadata, now);
+        }
+        history.lastFetch = now;
+
+        int interval = nextInterval(history.changeRate());
+        LOG.debug("Change rate {} per minute, fetchInterval {}", history.changeRate(), interval);
+
+        metadata.setValue(CHANGE_RATE_KEY, history.toString());
+        metadata.setValue(FETCH_INTERVAL_KEY, Integer.toString(interval));
+
+        return Optional.of(new Date(now + interval * MINUTE_MILLIS));
+    }
+
+    /** Updates the history if whether the page has changed since the last fetch is known */
+    private void observe(History history, Metadata metadata, long now) {
+        String signature = metadata.getFirstValue(SIGNATURE_KEY);
+        String oldSignature = metadata.getFirstValue(SIGNATURE_OLD_KEY);
+
+        boolean changed;
+        if ("304".equals(metadata.getFirstValue("fetch.statusCode"))) {
+            // HTTP 304 Not Modified
+            changed = false;
+        } else if (signature == null || oldSignature == null) {
+            // no decision possible by signature comparison
+            LOG.debug("No signature for FETCHED page: {}", metadata);
+            return;
+        } else {
+            changed = !signature.equals(oldSignature) && !isNearDuplicate(signature, oldSignature);
+        }
+
+        double elapsed = (now - history.lastFetch) / (double) MINUTE_MILLIS;
+        if (elapsed <= 0) {
+            return;
+        }
+
+        if (changed) {
+            String modifiedTimeString = Instant.ofEpochMilli(now).toString();
+            metadata.setValue(SIGNATURE_MODIFIED_KEY, modifiedTimeString);
+            if (setLastModified) {
+                metadata.setValue(HttpHeaders.LAST_MODIFIED, modifiedTimeString);
+            }
+        } else {
+            // remove old signature (do not keep same signature twice)
+            metadata.remove(SIGNATURE_OLD_KEY);
+        }
+
+        history.checks = history.checks * historyDecay + 1;
+        history.changes = history.changes * historyDecay + (changed ? 1 : 0);
+        history.minutes = history.minutes * historyDecay + elapsed;
+    }
+
+    private int initialInterval(Metadata metadata) {
+        Optional<Integer> customInterval = checkCustomInterval(metadata, Status.FETCHED);
+        int interval = customInterval.orElse(defaultfetchInterval);
+        return Math.max(interval, 1);
+    }
+
+    /**
+     * Interval in minutes for a change rate per minute, the longest of the one meeting the
+     * freshness target and the one for which an additional fetch brings the min fresh time
+     */
+    private int nextInterval(double changeRate) {
+        if (changeRate <= 0 || changeRate * minFreshMinutes >= 1) {
+            // never changes or changes too often to be worth fetching
+            return maxFetchInterval;
+        }
+        double product =
+                Math.max(rateIntervalProduct, solveMarginalGain(changeRate * minFreshMinutes));
+        double interval = product / changeRate;
+        if (interval >= maxFetchInterval) {
+            return maxFetchInterval;
+        }
+        return Math.max(minFetchInterval, (int) interval);
+    }
+
+    /**
+     * Returns the value of rate x interval for which the expected freshness (1 - e<sup>-x</sup>) /
+     * x equals the target, by bisection as the freshness decreases with x
+     */
+    static double solveFreshness(double target) {
+        double low = 0;
+        double high = 1;
+        while (freshness(high) > target) {
+            high *= 2;
+        }
+        for (int i = 0; i < 100; i++) {
+            double mid = (low + high) / 2;
+            if (freshness(mid) > target) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Returns the value of rate x interval for which the gain in freshness brought by fetching more
+     * often, 1 - (1 + x) e<sup>-x</sup> divided by the rate, equals the min gain, by bisection as
+     * it increases with x
+     */
+    static double solveMarginalGain(double rateTimesMinGain) {
+        double low = 0;
+        double high = 1;
+        while (marginalGain(high) < rateTimesMinGain) {
+            high *= 2;
+        }
+        for (int i = 0; i < 60; i++) {
+            double mid = (low + high) / 2;
+            if (marginalGain(mid) < rateTimesMinGain) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    private static double marginalGain(double x) {
+        return -Math.expm1(-x) - x * Math.exp(-x);
+    }
+
+    private static double freshness(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        return -Math.expm1(-x) / x;
+    }
+
+    /** Decayed counts of the fetches and changes of a page */
+    static class History {
+
+        double checks;
+        double changes;
+        double minutes;
+        long lastFetch;
+
+        private History(double checks, double changes, double minutes, long lastFetch) {
+            this.checks = checks;
+            this.changes = changes;
+            this.minutes = minutes;
+            this.lastFetch = lastFetch;
+        }
+
+        /** Starts with half a change over the initial interval */
+        History(int initialInterval) {
+            this(1, 0.5, initialInterval, 0);
+        }
+
+        /** Estimated number of changes per minute */
+        double changeRate() {
+            if (checks <= 0 || minutes <= 0) {
+                return 0;
+            }
+            double meanInterval = minutes / checks;
+            return -Math.log((checks - changes + 0.5) / (checks + 0.5)) / meanInterval;
+        }
+
+        static History parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split(",");
+            if (parts.length != 4) {
+                LOG.debug("Invalid change rate history {}", value);
+                return null;
+            }
+            try {
+                return new History(
+                        Double.parseDouble(parts[0]),
+                        Double.parseDouble(parts[1]),
+                        Double.parseDouble(parts[2]),
+                        Long.parseLong(parts[3]));
+            } catch (NumberFormatException e) {
+                LOG.debug("Invalid change rate history {}", value);
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.ROOT, "%.3f,%.3f,%.1f,%d", checks, changes, minutes, lastFetch);
+        }
+    }
+}
@@ -16,14 +16,14 @@
  */
 package org.apache.stormcrawler.persistence;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Locale;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.stormcrawler.Constants;
@@ -44,7 +44,16 @@ public class DefaultScheduler extends Scheduler {
     private int fetchErrorFetchInterval;
     private int errorFetchInterval;
 
-    private CustomInterval[] customIntervals;
+    /** Returned by {@link #findCustomInterval(Metadata, Status)} when no rule applies */
+    private static final int NO_INTERVAL = Integer.MIN_VALUE;
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    /** Names of the metadata keys used by the custom intervals */
+    private String[] customKeys = new String[0];
+
+    /** Custom intervals per metadata value, for each of the keys in customKeys */
+    private Map<String, CustomInterval>[] customIntervalsPerValue;
 
     /*
      * (non-Javadoc)
@@ -65,7 +74,9 @@ public class DefaultScheduler extends Scheduler {
         // must be of form fetchInterval(.STATUS)?.keyname=value
         // e.g. fetchInterval.isFeed=true
         // e.g. fetchInterval.FETCH_ERROR.isFeed=true
-        Map<String, CustomInterval> intervals = new HashMap<>();
+        Map<String, Map<String, CustomInterval>> intervals = new HashMap<>();
+        // order in which the intervals have always been checked, kept for their ranks
+        Map<String, List<CustomInterval>> checkOrder = new HashMap<>();
         Pattern pattern = Pattern.compile("^fetchInterval(\\..+?)?\\.(.+)=(.+)");
         Iterator<String> keyIter = stormConf.keySet().iterator();
         while (keyIter.hasNext()) {
@@ -81,19 +92,40 @@ public class DefaultScheduler extends Scheduler {
             }
             String mdname = m.group(2);
             String mdvalue = m.group(3);
-            int customInterval = ConfUtils.getInt(stormConf, key, Integer.MIN_VALUE);
-            if (customInterval != Integer.MIN_VALUE) {
-                CustomInterval interval = intervals.get(mdname + mdvalue);
+            int customInterval = ConfUtils.getInt(stormConf, key, NO_INTERVAL);
+            if (customInterval != NO_INTERVAL) {
+                Map<String, CustomInterval> perValue =
+                        intervals.computeIfAbsent(mdname, k -> new HashMap<>());
+                CustomInterval interval = perValue.get(mdvalue);
                 if (interval == null) {
-                    interval = new CustomInterval(mdname, mdvalue, status, customInterval);
-                } else {
-                    interval.setDurationForStatus(status, customInterval);
+                    interval = new CustomInterval();
+                    perValue.put(mdvalue, interval);
+                    // not computeIfAbsent which can change the iteration order
+                    List<CustomInterval> sameKey = checkOrder.get(mdname + mdvalue);
+                    if (sameKey == null) {
+                        sameKey = new ArrayList<>();
+                        checkOrder.put(mdname + mdvalue, sameKey);
+                    }
+                    sameKey.add(interval);
                 }
                 // specify particular interval for this status
-                intervals.put(mdname + mdvalue, interval);
+                interval.setDurationForStatus(status, customInterval);
+            }
+        }
+        // the rank decides which interval applies when several match
+        int rank = 0;
+        for (List<CustomInterval> sameOrder : checkOrder.values()) {
+            for (CustomInterval interval : sameOrder) {
+                interval.rank = rank++;
             }
         }
-        customIntervals = intervals.values().toArray(new CustomInterval[0]);
+        customKeys = intervals.keySet().toArray(new String[0]);
+        @SuppressWarnings("unchecked")
+        Map<String, CustomInterval>[] perKey = new Map[customKeys.length];
+        for (int i = 0; i < customKeys.length; i++) {
+            perKey[i] = intervals.get(customKeys[i]);
+        }
+        customIntervalsPerValue = perKey;
     }
 
     /*
@@ -108,20 +140,20 @@ public class DefaultScheduler extends Scheduler {
 
         int minutesIncrement = 0;
 
-        Optional<Integer> customInterval = Optional.empty();
+        int customInterval = NO_INTERVAL;
 
         // try with a value set in the metadata
         String customInMetadata = metadata.getFirstValue(DELAY_METADATA);
         if (customInMetadata != null) {
-            customInterval = Optional.of(Integer.parseInt(customInMetadata));
+            customInterval = Integer.parseInt(customInMetadata);
         }
         // try with the rules from the configuration
-        if (!customInterval.isPresent()) {
-            customInterval = checkCustomInterval(metadata, status);
+        if (customInterval == NO_INTERVAL) {
+            customInterval = findCustomInterval(metadata, status);
         }
 
-        if (customInterval.isPresent()) {
-            minutesIncrement = customInterval.get();
+        if (customInterval != NO_INTERVAL) {
+            minutesIncrement = customInterval;
         } else {
             switch (status) {
                 case FETCHED:
@@ -147,64 +179,73 @@ public class DefaultScheduler extends Scheduler {
             return Optional.empty();
         }
 
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ROOT);
-        cal.add(Calendar.MINUTE, minutesIncrement);
-
-        return Optional.of(cal.getTime());
+        // no time zone or DST involved when adding minutes to a timestamp
+        return Optional.of(
+                new Date(System.currentTimeMillis() + minutesIncrement * MINUTE_MILLIS));
     }
 
     /** Returns the first matching custom interval */
     protected final Optional<Integer> checkCustomInterval(Metadata metadata, Status s) {
-        if (customIntervals == null) return Optional.empty();
+        int interval = findCustomInterval(metadata, s);
+        if (interval == NO_INTERVAL) {
+            return Optional.empty();
+        }
+        return Optional.of(interval);
+    }
 
-        for (CustomInterval customInterval : customIntervals) {
-            String[] values = metadata.getValues(customInterval.key);
+    /**
+     * Returns the duration for the status of the first matching custom interval or {@link
+     * #NO_INTERVAL}. The first one is the one with the lowest rank among those with a key and
+     * value found in the metadata, even if it has no duration for the status.
+     */
+    private int findCustomInterval(Metadata metadata, Status s) {
+        CustomInterval first = null;
+        for (int i = 0; i < customKeys.length; i++) {
+            String[] values = metadata.getValues(customKeys[i]);
             if (values == null) {
                 continue;
             }
+            Map<String, CustomInterval> perValue = customIntervalsPerValue[i];
             for (String v : values) {
-                if (v.equals(customInterval.value)) {
-                    return customInterval.getDurationForStatus(s);
+                CustomInterval interval = perValue.get(v);
+                if (interval != null && (first == null || interval.rank < first.rank)) {
+                    first = interval;
                 }
             }
         }
-
-        return Optional.empty();
+        if (first == null) {
+            return NO_INTERVAL;
+        }
+        return first.getDurationForStatus(s);
     }
 
-    private class CustomInterval {
-        private String key;
-        private String value;
-        private Map<Status, Integer> durationPerStatus;
-        private Integer defaultDuration = null;
-
-        private CustomInterval(String key, String value, Status status, int minutes) {
-            this.key = key;
-            this.value = value;
-            this.durationPerStatus = new HashMap<>();
-            setDurationForStatus(status, minutes);
+    private static class CustomInterval {
+        private int rank;
+        private final int[] durationPerStatus;
+        private int defaultDuration = NO_INTERVAL;
+
+        private CustomInterval() {
+            this.durationPerStatus = new int[Status.values().length];
+            Arrays.fill(durationPerStatus, NO_INTERVAL);
         }
 
         private void setDurationForStatus(Status s, int minutes) {
             if (s == null) {
                 defaultDuration = minutes;
             } else {
-                this.durationPerStatus.put(s, minutes);
+                this.durationPerStatus[s.ordinal()] = minutes;
             }
         }
 
-        private Optional<Integer> getDurationForStatus(Status s) {
+        private int getDurationForStatus(Status s) {
             // do we have a specific value for this status?
-            Integer customD = durationPerStatus.get(s);
-            if (customD != null) {
-                return Optional.of(customD);
+            int customD = durationPerStatus[s.ordinal()];
+            if (customD != NO_INTERVAL) {
+                return customD;
             }
             // is there a default one set?
-            if (defaultDuration != null) {
-                return Optional.of(defaultDuration);
-            }
-            // no default value or custom one for that status
-            return Optional.empty();
+            // NO_INTERVAL if there is no default value or custom one for that status
+            return defaultDuration;
         }
     }
 }
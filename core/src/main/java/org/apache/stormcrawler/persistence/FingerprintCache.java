@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set of URLs with a fixed memory footprint, used by {@link AbstractStatusUpdaterBolt} as an
+ * alternative to a Caffeine cache of the URL strings. The URLs are stored as 64 bit fingerprints in
+ * two open-addressing tables of longs, allocated once: the current generation, where the URLs get
+ * added, and the previous one. When the current generation is full or older than the TTL, it
+ * becomes the previous one and the previous one is cleared. A URL found in the previous generation
+ * is copied to the current one, so that, like with <i>expireAfterAccess</i>, the URLs which keep
+ * being looked up stay in the cache. The others are dropped after one to two TTLs, or earlier if
+ * there are more URLs than fit in the memory given.
+ *
+ * <p>Two different URLs can have the same fingerprint, in which case a URL which is not in the cache
+ * is reported as being there. {@link #falsePositiveProbability()} gives the probability that this
+ * happens for a lookup, which is about the number of fingerprints stored divided by 2<sup>64</sup>.
+ *
+ * <p>Thread safe.
+ *
+ * @since 3.1
+ */
+public class FingerprintCache {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private long[] current;
+
+    private long[] previous;
+
+    private int currentSize = 0;
+
+    private int previousSize = 0;
+
+    /** Max number of fingerprints in a generation, for a load factor of 0.75 */
+    private final int maxEntries;
+
+    private final long ttlMillis;
+
+    private long generationStart;
+
+    /**
+     * @param maxBytes memory used by the two generations, rounded down to a power of two and at
+     *     least 16 KB
+     * @param ttl time after which the current generation gets replaced
+     */
+    public FingerprintCache(long maxBytes, long ttl, TimeUnit timeUnit) {
+        // two generations of 8 bytes per slot
+        long slots = Math.max(MIN_CAPACITY, maxBytes / 16);
+        int capacity = (int) Long.highestOneBit(Math.min(slots, 1 << 30));
+        current = new long[capacity];
+        previous = new long[capacity];
+        maxEntries = capacity / 4 * 3;
+        ttlMillis = timeUnit.toMillis(ttl);
+        generationStart = System.currentTimeMillis();
+    }
+
+    public boolean contains(String url) {
+        return contains(InProcessFingerprints.fingerprint(url), System.currentTimeMillis());
+    }
+
+    public void put(String url) {
+        put(InProcessFingerprints.fingerprint(url), System.currentTimeMillis());
+    }
+
+    /** Number of fingerprints stored, a URL can be counted in both generations */
+    public synchronized long size() {
+        return currentSize + previousSize;
+    }
+
+    /** Probability that a URL which is not in the cache is reported as being there */
+    public synchronized double falsePositiveProbability() {
+        return (currentSize + previousSize) / 0x1p64;
+    }
+
+    synchronized boolean contains(long fingerprint, long now) {
+        fingerprint = normalize(fingerprint);
+        rotate(now);
+        if (indexOf(current, fingerprint) >= 0) {
+            return true;
+        }
+        if (indexOf(previous, fingerprint) >= 0) {
+            insert(fingerprint, now);
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void put(long fingerprint, long now) {
+        fingerprint = normalize(fingerprint);
+        rotate(now);
+        if (indexOf(current, fingerprint) < 0) {
+            insert(fingerprint, now);
+        }
+    }
+
+    /** 0 marks the empty slots and is stored as 1 */
+    private static long normalize(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /** Returns the slot of a fingerprint or -1 - the slot where it would go */
+    private static int indexOf(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int i = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (table[i] != 0) {
+            if (table[i] == fingerprint) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
+
+    private void insert(long fingerprint, long now) {
+        if (currentSize >= maxEntries) {
+            newGeneration(now);
+        }
+        current[-1 - indexOf(current, fingerprint)] = fingerprint;
+        currentSize++;
+    }
+
+    private void rotate(long now) {
+        long age = now - generationStart;
+        if (age < ttlMillis) {
+            return;
+        }
+        newGeneration(now);
+        // nothing has been added or looked up for a while, the previous generation expired too
+        if (age >= 2 * ttlMillis) {
+            clearPrevious();
+        }
+    }
+
+    private void newGeneration(long now) {
+        long[] table = previous;
+        previous = current;
+        previousSize = currentSize;
+        current = table;
+        Arrays.fill(current, 0);
+        currentSize = 0;
+        generationStart = now;
+    }
+
+    private void clearPrevious() {
+        Arrays.fill(previous, 0);
+        previousSize = 0;
+    }
+}
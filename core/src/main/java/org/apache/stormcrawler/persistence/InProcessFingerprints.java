@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.stormcrawler.util.LongIntHashMap;
+import org.apache.stormcrawler.util.XXHash64;
+
+/**
+ * Keeps track of the URLs being processed by a spout and of the ones removed recently (the
+ * purgatory) using 64 bit fingerprints of the URLs stored in primitive open-addressing tables
+ * instead of the URLs themselves. An entry takes between 16 and 32 bytes of heap when in process
+ * and twice as much when in the purgatory, regardless of the length of the URL.
+ *
+ * <p>Two different URLs can have the same fingerprint. The probability is about n<sup>2</sup> /
+ * 2<sup>65</sup> for n URLs tracked at the same time, i.e. less than one in a billion for a million
+ * URLs. When it happens, the URLs are considered to be the same: a URL can be reported as being
+ * processed or in the purgatory when it is the other URL which is, but never the opposite. The
+ * worst case is therefore that a URL is not added to the buffer of the spout and has to wait for a
+ * later query, it can never be emitted twice because of a collision. The number of times a
+ * fingerprint has been added is counted so that it stays in process until both URLs have been
+ * removed.
+ *
+ * <p>Not thread safe.
+ *
+ * @since 3.1
+ */
+public class InProcessFingerprints {
+
+    private static final int INITIAL_QUEUE_CAPACITY = 1024;
+
+    /** Number of times each fingerprint being processed has been added */
+    private final LongIntHashMap inProcess = new LongIntHashMap();
+
+    /** Number of times each fingerprint in the purgatory is in the queue */
+    private final LongIntHashMap purgatory = new LongIntHashMap();
+
+    /**
+     * Fingerprints and expiry times in the order in which they entered the purgatory, which is also
+     * the order in which they expire as the TTL is constant
+     */
+    private long[] queueFingerprints = new long[INITIAL_QUEUE_CAPACITY];
+
+    private long[] queueExpiries = new long[INITIAL_QUEUE_CAPACITY];
+
+    private int queueHead = 0;
+
+    private int queueSize = 0;
+
+    private final long ttlMillis;
+
+    public InProcessFingerprints(long ttl, TimeUnit timeUnit) {
+        this.ttlMillis = timeUnit.toMillis(ttl);
+    }
+
+    /** Returns the 64 bit fingerprint of a URL */
+    public static long fingerprint(String url) {
+        return XXHash64.hash(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean contains(String url) {
+        return contains(fingerprint(url), System.currentTimeMillis());
+    }
+
+    public void add(String url) {
+        add(fingerprint(url));
+    }
+
+    /**
+     * Removes a URL from the ones being processed and puts it in the purgatory.
+     *
+     * @return true if the URL was being processed
+     */
+    public boolean remove(String url) {
+        return remove(fingerprint(url), System.currentTimeMillis());
+    }
+
+    /** Number of distinct fingerprints being processed */
+    public int size() {
+        return inProcess.size();
+    }
+
+    /**
+     * Number of distinct fingerprints in the purgatory, including the expired ones not yet removed
+     */
+    public int inPurgatory() {
+        return purgatory.size();
+    }
+
+    boolean contains(long fingerprint, long now) {
+        if (inProcess.get(fingerprint, 0) > 0) {
+            return true;
+        }
+        expire(now);
+        return purgatory.get(fingerprint, 0) > 0;
+    }
+
+    void add(long fingerprint) {
+        inProcess.increment(fingerprint, 1);
+    }
+
+    boolean remove(long fingerprint, long now) {
+        expire(now);
+        if (ttlMillis > 0) {
+            purgatory.increment(fingerprint, 1);
+            enqueue(fingerprint, now + ttlMillis);
+        }
+        if (inProcess.get(fingerprint, 0) == 0) {
+            return false;
+        }
+        inProcess.increment(fingerprint, -1);
+        return true;
+    }
+
+    /** Removes the fingerprints which have spent more than the TTL in the purgatory */
+    private void expire(long now) {
+        while (queueSize > 0 && queueExpiries[queueHead] <= now) {
+            // stays if it has been put in the purgatory again since
+            purgatory.increment(queueFingerprints[queueHead], -1);
+            queueHead = (queueHead + 1) % queueFingerprints.length;
+            queueSize--;
+        }
+        if (queueSize == 0) {
+            queueHead = 0;
+        }
+    }
+
+    private void enqueue(long fingerprint, long expiry) {
+        if (queueSize == queueFingerprints.length) {
+            long[] fingerprints = new long[queueFingerprints.length * 2];
+            long[] expiries = new long[queueFingerprints.length * 2];
+            for (int i = 0; i < queueSize; i++) {
+                int pos = (queueHead + i) % queueFingerprints.length;
+                fingerprints[i] = queueFingerprints[pos];
+                expiries[i] = queueExpiries[pos];
+            }
+            queueFingerprints = fingerprints;
+            queueExpiries = expiries;
+            queueHead = 0;
+        }
+        int tail = (queueHead + queueSize) % queueFingerprints.length;
+        queueFingerprints[tail] = fingerprint;
+        queueExpiries[tail] = expiry;
+        queueSize++;
+    }
+}
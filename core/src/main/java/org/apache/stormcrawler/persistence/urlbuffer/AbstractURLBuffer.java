@@ -16,13 +16,12 @@
  */
 package org.apache.stormcrawler.persistence.urlbuffer;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.persistence.EmptyQueueListener;
 import org.apache.stormcrawler.util.URLPartitioner;
@@ -31,7 +30,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Abstract class for URLBuffer interface, meant to simplify the code of the implementations and
- * provide some default methods
+ * provide some default methods.
+ *
+ * <p>The URLs are stored in array-based queues, one per key. Only the queues containing URLs are
+ * kept, the implementations are notified with {@link #queueCreated(URLQueue)} when a queue is
+ * created so that they can schedule it and take its next URL with {@link #release(URLQueue)}. The
+ * methods modifying the buffer are synchronized and run in constant or logarithmic time, {@link
+ * #size()} and {@link #hasNext()} do not need the lock so that they can be called while a
+ * background thread is adding URLs.
  *
  * @since 1.15
  */
@@ -44,16 +50,20 @@ public abstract class AbstractURLBuffer implements URLBuffer {
 
     protected final URLPartitioner partitioner = new URLPartitioner();
 
-    protected final Map<String, Queue<URLMetadata>> queues =
-            Collections.synchronizedMap(new LinkedHashMap<>());
+    /** Queues containing at least one URL, to be accessed with the lock of the buffer */
+    protected final Map<String, URLQueue> queues = new HashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile int numQueues = 0;
 
     public void configure(Map<String, Object> stormConf) {
         partitioner.configure(stormConf);
     }
 
     /** Total number of queues in the buffer * */
-    public synchronized int numQueues() {
-        return queues.size();
+    public int numQueues() {
+        return numQueues;
     }
 
     /**
@@ -65,7 +75,7 @@ public abstract class AbstractURLBuffer implements URLBuffer {
 
         LOG.debug("Adding {}", URL);
 
-        if (in_buffer.contains(URL)) {
+        if (!in_buffer.add(URL)) {
             LOG.debug("already in buffer {}", URL);
             return false;
         }
@@ -81,9 +91,18 @@ public abstract class AbstractURLBuffer implements URLBuffer {
 
         // create the queue if it does not exist
         // and add the url
-        queues.computeIfAbsent(key, k -> new LinkedList<URLMetadata>())
-                .add(new URLMetadata(URL, m));
-        return in_buffer.add(URL);
+        URLQueue queue = queues.get(key);
+        if (queue == null) {
+            queue = createQueue(key);
+            queue.add(URL, m);
+            queues.put(key, queue);
+            queueCreated(queue);
+        } else {
+            queue.add(URL, m);
+        }
+        size.incrementAndGet();
+        numQueues = queues.size();
+        return true;
     }
 
     /**
@@ -91,13 +110,13 @@ public abstract class AbstractURLBuffer implements URLBuffer {
      *
      * @return false if the URL was already in the buffer, true if it wasn't and was added
      */
-    public synchronized boolean add(String URL, Metadata m) {
+    public boolean add(String URL, Metadata m) {
         return add(URL, m, null);
     }
 
     /** Total number of URLs in the buffer * */
-    public synchronized int size() {
-        return in_buffer.size();
+    public int size() {
+        return size.get();
     }
 
     public void setEmptyQueueListener(EmptyQueueListener l) {
@@ -105,17 +124,112 @@ public abstract class AbstractURLBuffer implements URLBuffer {
     }
 
     @Override
-    public synchronized boolean hasNext() {
-        return !queues.isEmpty();
+    public boolean hasNext() {
+        return size.get() > 0;
+    }
+
+    /** Returns a new empty queue, can be overridden to keep additional information per queue */
+    protected URLQueue createQueue(String key) {
+        return new URLQueue(key);
     }
 
-    protected class URLMetadata {
-        String url;
-        Metadata metadata;
+    /**
+     * Called with the lock of the buffer held when a queue gets created, i.e. when a URL is added
+     * for a key which had no URLs in the buffer.
+     */
+    protected abstract void queueCreated(URLQueue queue);
+
+    /**
+     * Removes the first URL of a queue from the buffer. If the queue is then empty, it is removed
+     * and the listener is notified, otherwise the implementation is responsible for scheduling it
+     * again. Must be called with the lock of the buffer held.
+     */
+    protected Values release(URLQueue queue) {
+        String url = queue.firstURL();
+        Metadata metadata = queue.firstMetadata();
+        queue.removeFirst();
+
+        LOG.debug("Item {}", url);
+
+        if (queue.isEmpty()) {
+            queues.remove(queue.getKey());
+            // notify that the queue is empty
+            if (listener != null) {
+                listener.emptyQueue(queue.getKey());
+            }
+        }
+
+        // remove it from the list of URLs in the queue
+        in_buffer.remove(url);
+        size.decrementAndGet();
+        numQueues = queues.size();
+        return new Values(url, metadata);
+    }
+
+    /**
+     * FIFO queue of URLs and their metadata stored in circular arrays, which avoids allocating a
+     * node per URL. Not thread safe.
+     */
+    protected static class URLQueue {
+
+        private final String key;
+
+        private String[] urls = new String[2];
+
+        private Metadata[] metadata = new Metadata[2];
+
+        private int head = 0;
+
+        private int size = 0;
+
+        protected URLQueue(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(String url, Metadata md) {
+            if (size == urls.length) {
+                String[] newURLs = new String[size * 2];
+                Metadata[] newMetadata = new Metadata[size * 2];
+                for (int i = 0; i < size; i++) {
+                    int pos = (head + i) % urls.length;
+                    newURLs[i] = urls[pos];
+                    newMetadata[i] = metadata[pos];
+                }
+                urls = newURLs;
+                metadata = newMetadata;
+                head = 0;
+            }
+            int tail = (head + size) % urls.length;
+            urls[tail] = url;
+            metadata[tail] = md;
+            size++;
+        }
+
+        String firstURL() {
+            return urls[head];
+        }
+
+        Metadata firstMetadata() {
+            return metadata[head];
+        }
 
-        URLMetadata(String u, Metadata m) {
-            url = u;
-            metadata = m;
+        void removeFirst() {
+            urls[head] = null;
+            metadata[head] = null;
+            head = (head + 1) % urls.length;
+            size--;
         }
     }
 }
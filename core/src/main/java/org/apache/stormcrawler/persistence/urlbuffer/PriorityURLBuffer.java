@@ -19,11 +19,8 @@ package org.apache.stormcrawler.persistence.urlbuffer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.storm.tuple.Values;
@@ -63,31 +60,25 @@ public class PriorityURLBuffer extends SimpleURLBuffer {
     // sorts the buffers according to the number of acks they got since the
     // previous time
     private void rerank() {
-        if (queues.isEmpty()) {
+        if (rotation.isEmpty()) {
             return;
         }
 
-        List<QueueCount> sorted = new ArrayList<>();
+        List<QueueCount> sorted = new ArrayList<>(rotation.size());
 
-        // populate a sorted set with key - queues
-        Iterator<Entry<String, Queue<URLMetadata>>> i = queues.entrySet().iterator();
-
-        while (i.hasNext()) {
-            Entry<String, Queue<URLMetadata>> entry = i.next();
-            String name = entry.getKey();
-            int ackNum = ackCount.getOrDefault(name, new AtomicInteger(0)).get();
-            QueueCount qc = new QueueCount(name, ackNum);
-            sorted.add(qc);
+        // populate a sorted list with the queues
+        for (URLQueue queue : rotation) {
+            AtomicInteger ackNum = ackCount.get(queue.getKey());
+            sorted.add(new QueueCount(queue, ackNum != null ? ackNum.get() : 0));
         }
 
         Collections.sort(sorted);
 
-        // now create a new Map of queues based on the sorted set
-        // lowest score go first
-
+        // now rebuild the rotation based on the sorted list
+        // highest score go first
+        rotation.clear();
         for (QueueCount q : sorted) {
-            Queue<URLMetadata> queue = queues.remove(q.name);
-            queues.put(q.name, queue);
+            rotation.addLast(q.queue);
         }
 
         ackCount.clear();
@@ -104,12 +95,14 @@ public class PriorityURLBuffer extends SimpleURLBuffer {
         ackCount.computeIfAbsent(key, k -> new AtomicInteger(0)).incrementAndGet();
     }
 
-    class QueueCount implements Comparable<QueueCount> {
+    static class QueueCount implements Comparable<QueueCount> {
+        URLQueue queue;
         String name;
         int count;
 
-        QueueCount(String n, int c) {
-            name = n;
+        QueueCount(URLQueue q, int c) {
+            queue = q;
+            name = q.getKey();
             count = c;
         }
 
@@ -22,10 +22,10 @@ import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import com.google.common.collect.EvictingQueue;
 import java.time.Instant;
-import java.util.Iterator;
+import java.util.Comparator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.util.ConfUtils;
@@ -34,7 +34,11 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Checks how long the last N URLs took to work out whether a queue should release a URL. */
+/**
+ * Checks how long the last N URLs took to work out whether a queue should release a URL. The queues
+ * are kept sorted by the time at which they can release their next URL, so that the ones which are
+ * not ready are never looked at.
+ */
 public class SchedulingURLBuffer extends AbstractURLBuffer
         implements RemovalListener<String, Object[]> {
 
@@ -52,7 +56,15 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
 
     private Cache<String, Queue<Long>> timings;
 
-    private Cache<String, Instant> lastReleased;
+    private Cache<String, Long> lastReleased;
+
+    /** Queues by the time at which they can release a URL, then by the order they were added */
+    private final TreeSet<ScheduledQueue> schedule =
+            new TreeSet<>(
+                    Comparator.<ScheduledQueue>comparingLong(q -> q.readyTime)
+                            .thenComparingLong(q -> q.sequence));
+
+    private long sequence = 0;
 
     public void configure(Map<String, Object> stormConf) {
         super.configure(stormConf);
@@ -66,6 +78,16 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
         lastReleased = Caffeine.newBuilder().expireAfterAccess(10, TimeUnit.MINUTES).build();
     }
 
+    @Override
+    protected URLQueue createQueue(String key) {
+        return new ScheduledQueue(key);
+    }
+
+    @Override
+    protected void queueCreated(URLQueue queue) {
+        schedule((ScheduledQueue) queue, System.currentTimeMillis());
+    }
+
     /**
      * Retrieves the next available URL, guarantees that the URLs are always perfectly shuffled
      *
@@ -73,67 +95,53 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
      */
     public synchronized Values next() {
 
-        do {
-            Iterator<Entry<String, Queue<URLMetadata>>> i = queues.entrySet().iterator();
-
-            if (!i.hasNext()) {
-                LOG.trace("Empty iterator");
-                return null;
-            }
-
-            Map.Entry<String, Queue<URLMetadata>> nextEntry = i.next();
-
-            Queue<URLMetadata> queue = nextEntry.getValue();
-            String queueName = nextEntry.getKey();
-
-            // remove the entry, gets added back later
-            i.remove();
-
-            LOG.trace("Next queue {}", queueName);
-
-            URLMetadata item = null;
-
-            // is this queue ready to be processed?
-            if (canRelease(queueName)) {
-                // try the first element
-                item = queue.poll();
-                LOG.trace("Item {}", item.url);
-            } else {
-                LOG.trace("Queue {} not ready to release yet", queueName);
-            }
-
-            // any left? add to the end of the iterator
-            if (!queue.isEmpty()) {
-                LOG.debug("Adding to the back of the queue {}", queueName);
-                queues.put(queueName, queue);
-            }
-            // notify that the queue is empty
-            else {
-                if (listener != null) {
-                    listener.emptyQueue(queueName);
-                }
-            }
-
-            if (item != null) {
-                lastReleased.put(queueName, Instant.now());
-                unacked.put(item.url, new Object[] {Instant.now(), queueName});
-                // remove it from the list of URLs in the queue
-                in_buffer.remove(item.url);
-                return new Values(item.url, item.metadata);
-            }
-        } while (!queues.isEmpty());
-        return null;
+        if (schedule.isEmpty()) {
+            LOG.trace("Empty schedule");
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+
+        // is the first queue ready to be processed?
+        ScheduledQueue queue = schedule.first();
+        if (queue.readyTime > now) {
+            LOG.trace("Queue {} not ready to release yet", queue.getKey());
+            return null;
+        }
+
+        schedule.pollFirst();
+
+        LOG.trace("Next queue {}", queue.getKey());
+
+        lastReleased.put(queue.getKey(), now);
+        Values item = release(queue);
+        unacked.put(item.get(0).toString(), new Object[] {Instant.now(), queue.getKey()});
+
+        // any left? schedule it again
+        if (!queue.isEmpty()) {
+            LOG.debug("Rescheduling the queue {}", queue.getKey());
+            schedule(queue, now);
+        }
+
+        return item;
     }
 
-    private boolean canRelease(String queueName) {
-        // return true if enough time has expired since the previous release
-        // given the past performance of the last N urls
+    private void schedule(ScheduledQueue queue, long now) {
+        queue.readyTime = getReadyTime(queue.getKey(), now);
+        queue.sequence = sequence++;
+        schedule.add(queue);
+    }
 
+    /**
+     * Returns the time at which a queue can release a URL given the past performance of the last N
+     * URLs, which is now if it can do so straight away.
+     */
+    private long getReadyTime(String queueName, long now) {
         Queue<Long> times = timings.getIfPresent(queueName);
-        if (times == null) return true;
+        if (times == null) return now;
 
         // not enough history yet? just say yes
-        if (times.size() < historySize) return true;
+        if (times.size() < historySize) return now;
 
         // get the average duration over the recent history
         long totalMsec = 0l;
@@ -144,15 +152,15 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
 
         LOG.trace("Average for {}: {} msec", queueName, average);
 
-        Instant lastRelease = lastReleased.getIfPresent(queueName);
+        Long lastRelease = lastReleased.getIfPresent(queueName);
         if (lastRelease == null) {
             // removed? bit unlikely but nevermind
-            return true;
+            return now;
         }
 
-        // check that enough time has elapsed
+        // enough time must have elapsed
         // since the previous release from this queue
-        return lastRelease.plusMillis(average).isBefore(Instant.now());
+        return Math.max(now, lastRelease + average + 1);
     }
 
     public void acked(String url) {
@@ -163,6 +171,8 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
         if (cached == null) {
             return;
         }
+        // not to be counted as timed out
+        unacked.invalidate(url);
 
         Instant t = (Instant) cached[0];
         String key = (String) cached[1];
@@ -175,14 +185,35 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
         addTiming(tookmsec, key);
     }
 
-    void addTiming(long t, String queueName) {
+    synchronized void addTiming(long t, String queueName) {
         Queue<Long> times = timings.get(queueName, k -> EvictingQueue.create(historySize));
         times.add(t);
+        // the average has changed, update the position of the queue
+        URLQueue queue = queues.get(queueName);
+        if (queue != null && schedule.remove(queue)) {
+            schedule((ScheduledQueue) queue, System.currentTimeMillis());
+        }
     }
 
     @Override
     public void onRemoval(
             @Nullable String key, Object @Nullable [] value, @NotNull RemovalCause cause) {
-        addTiming(maxTimeMSec, key);
+        // not acked in time, the timing is for the queue of the URL
+        if (cause == RemovalCause.EXPIRED && value != null) {
+            addTiming(maxTimeMSec, (String) value[1]);
+        }
+    }
+
+    static class ScheduledQueue extends URLQueue {
+
+        /** Time at which the queue can release its next URL */
+        long readyTime;
+
+        /** Order in which the queue was scheduled, to rotate between the queues which are ready */
+        long sequence;
+
+        ScheduledQueue(String key) {
+            super(key);
+        }
     }
 }
@@ -16,10 +16,7 @@
  */
 package org.apache.stormcrawler.persistence.urlbuffer;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Queue;
+import java.util.ArrayDeque;
 import org.apache.storm.tuple.Values;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +30,14 @@ public class SimpleURLBuffer extends AbstractURLBuffer {
 
     static final Logger LOG = LoggerFactory.getLogger(SimpleURLBuffer.class);
 
+    /** Queues in the order in which they release their next URL */
+    protected final ArrayDeque<URLQueue> rotation = new ArrayDeque<>();
+
+    @Override
+    protected void queueCreated(URLQueue queue) {
+        rotation.addLast(queue);
+    }
+
     /**
      * Retrieves the next available URL, guarantees that the URLs are always perfectly shuffled
      *
@@ -40,51 +45,21 @@ public class SimpleURLBuffer extends AbstractURLBuffer {
      */
     public synchronized Values next() {
 
-        if (queues.isEmpty()) {
-            return null;
-        }
-
-        Iterator<Entry<String, Queue<URLMetadata>>> i = queues.entrySet().iterator();
-
-        if (!i.hasNext()) {
-            LOG.debug("Empty iterator");
+        URLQueue queue = rotation.pollFirst();
+        if (queue == null) {
             return null;
         }
 
-        Map.Entry<String, Queue<URLMetadata>> nextEntry = i.next();
-
-        Queue<URLMetadata> queue = nextEntry.getValue();
-        String queueName = nextEntry.getKey();
+        LOG.debug("Next queue {}", queue.getKey());
 
-        // remove the entry
-        i.remove();
+        Values item = release(queue);
 
-        LOG.debug("Next queue {}", queueName);
-
-        // remove the first element
-        URLMetadata item = queue.poll();
-
-        if (item == null) {
-            LOG.debug("The queue at {} is empty.", queueName);
-            return null;
-        }
-
-        LOG.debug("Item {}", item.url);
-
-        // any left? add to the end of the iterator
+        // any left? add to the end of the rotation
         if (!queue.isEmpty()) {
-            LOG.debug("adding to the back of the queue {}", queueName);
-            queues.put(queueName, queue);
-        }
-        // notify that the queue is empty
-        else {
-            if (listener != null) {
-                listener.emptyQueue(queueName);
-            }
+            LOG.debug("adding to the back of the queue {}", queue.getKey());
+            rotation.addLast(queue);
         }
 
-        // remove it from the list of URLs in the queue
-        in_buffer.remove(item.url);
-        return new Values(item.url, item.metadata);
+        return item;
     }
 }
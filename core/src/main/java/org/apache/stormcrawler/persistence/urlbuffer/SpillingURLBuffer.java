@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence.urlbuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.serialization.KryoValuesDeserializer;
+import org.apache.storm.serialization.KryoValuesSerializer;
+import org.apache.storm.utils.Utils;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.LongIntHashMap;
+import org.apache.stormcrawler.util.XXHash64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rotates on the queues like the {@link SimpleURLBuffer} but keeps at most
+ * <i>urlbuffer.spill.queue.max.memory</i> URLs (default 100) in memory per queue. The following
+ * ones are appended to a local file in <i>urlbuffer.spill.dir</i> (default the temporary directory
+ * of the JVM), with their metadata in the same Kryo form as when they are sent between components,
+ * and read back in the order in which they were added once the URLs in memory have been released.
+ *
+ * <p>A spilled URL takes about 40 bytes of heap whatever the size of its metadata: its offset in the
+ * file and its 64 bit fingerprint, which is used to check that it is not added twice. Two URLs with
+ * the same fingerprint, with a probability of about n<sup>2</sup> / 2<sup>65</sup> for n spilled
+ * URLs, make {@link #add(String, Metadata, String)} return false for a URL which is not in the
+ * buffer. The URL is then left for a later query, as if it had been in the buffer.
+ *
+ * <p>The file is truncated whenever all the URLs spilled have been read back and deleted by {@link
+ * #close()}.
+ *
+ * @since 3.1
+ */
+public class SpillingURLBuffer extends SimpleURLBuffer {
+
+    static final Logger LOG = LoggerFactory.getLogger(SpillingURLBuffer.class);
+
+    /** Max number of URLs per queue to keep in memory */
+    public static final String MAX_IN_MEMORY_PARAM = "urlbuffer.spill.queue.max.memory";
+
+    /** Directory for the file of the URLs spilled */
+    public static final String SPILL_DIR_PARAM = "urlbuffer.spill.dir";
+
+    private int maxInMemory = 100;
+
+    private Path spillDir = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    private Path spillFile;
+
+    private FileChannel channel;
+
+    private DataOutputStream output;
+
+    /** Length of the file including what is in the output buffer */
+    private long fileLength = 0;
+
+    private long numSpilled = 0;
+
+    /** Number of URLs spilled per fingerprint */
+    private final LongIntHashMap spilledFingerprints = new LongIntHashMap();
+
+    private KryoValuesSerializer serializer;
+
+    private KryoValuesDeserializer deserializer;
+
+    @Override
+    public void configure(Map<String, Object> stormConf) {
+        super.configure(stormConf);
+        maxInMemory = Math.max(1, ConfUtils.getInt(stormConf, MAX_IN_MEMORY_PARAM, maxInMemory));
+        String dir = ConfUtils.getString(stormConf, SPILL_DIR_PARAM);
+        if (dir != null) {
+            spillDir = Paths.get(dir);
+        }
+
+        // same serialization as between the components of the topology
+        Map<String, Object> kryoConf = new HashMap<>(Utils.readDefaultConfig());
+        kryoConf.putAll(stormConf);
+        List<Object> registrations = new ArrayList<>();
+        Object registered = kryoConf.get(Config.TOPOLOGY_KRYO_REGISTER);
+        if (registered instanceof List) {
+            registrations.addAll((List<?>) registered);
+        }
+        kryoConf.put(Config.TOPOLOGY_KRYO_REGISTER, registrations);
+        Config.registerSerialization(kryoConf, Metadata.class);
+        serializer = new KryoValuesSerializer(kryoConf);
+        deserializer = new KryoValuesDeserializer(kryoConf);
+    }
+
+    @Override
+    public synchronized boolean add(String URL, Metadata m, String key) {
+        if (numSpilled > 0 && spilledFingerprints.get(fingerprint(URL), 0) > 0) {
+            LOG.debug("already spilled {}", URL);
+            return false;
+        }
+        return super.add(URL, m, key);
+    }
+
+    @Override
+    protected URLQueue createQueue(String key) {
+        return new SpillingQueue(key);
+    }
+
+    /** Number of URLs in the buffer which are on disk */
+    public synchronized long numSpilled() {
+        return numSpilled;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile);
+            }
+        } catch (IOException e) {
+            LOG.error("Exception caught when closing {}", spillFile, e);
+        }
+        output = null;
+        channel = null;
+        spillFile = null;
+    }
+
+    private static long fingerprint(String url) {
+        return XXHash64.hash(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Appends a URL to the file and returns its offset */
+    private long spill(String url, Metadata metadata) throws IOException {
+        if (output == null) {
+            Files.createDirectories(spillDir);
+            spillFile = Files.createTempFile(spillDir, "urlbuffer-", ".spill");
+            channel =
+                    FileChannel.open(
+                            spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            output =
+                    new DataOutputStream(
+                            new BufferedOutputStream(Channels.newOutputStream(channel), 65536));
+            LOG.info("Spilling URLs to {}", spillFile);
+        }
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        byte[] mdBytes = serializer.serializeObject(metadata);
+        long offset = fileLength;
+        output.writeInt(urlBytes.length);
+        output.writeInt(mdBytes.length);
+        output.write(urlBytes);
+        output.write(mdBytes);
+        fileLength += 8 + urlBytes.length + mdBytes.length;
+        return offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + spillFile);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Queue keeping the URLs which do not fit in memory as offsets in the file of the buffer. Once
+     * a URL has been spilled, the following ones are too so that they are released in order.
+     */
+    class SpillingQueue extends URLQueue {
+
+        private long[] offsets = new long[0];
+
+        private int offsetsHead = 0;
+
+        private int numOffsets = 0;
+
+        SpillingQueue(String key) {
+            super(key);
+        }
+
+        @Override
+        public int size() {
+            return super.size() + numOffsets;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return super.isEmpty() && numOffsets == 0;
+        }
+
+        @Override
+        void add(String url, Metadata md) {
+            if (numOffsets == 0 && super.size() < maxInMemory) {
+                super.add(url, md);
+                return;
+            }
+            try {
+                addOffset(spill(url, md));
+            } catch (IOException e) {
+                throw new RuntimeException("Can't write to " + spillFile, e);
+            }
+            in_buffer.remove(url);
+            spilledFingerprints.increment(fingerprint(url), 1);
+            numSpilled++;
+        }
+
+        @Override
+        void removeFirst() {
+            super.removeFirst();
+            if (super.isEmpty() && numOffsets > 0) {
+                try {
+                    reload();
+                } catch (IOException e) {
+                    throw new RuntimeException("Can't read from " + spillFile, e);
+                }
+            }
+        }
+
+        /** Reads the next URLs of the queue back into memory */
+        private void reload() throws IOException {
+            output.flush();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            while (numOffsets > 0 && super.size() < maxInMemory) {
+                long offset = offsets[offsetsHead];
+                offsetsHead = (offsetsHead + 1) % offsets.length;
+                numOffsets--;
+
+                header.clear();
+                readFully(header, offset);
+                int urlLength = header.getInt();
+                int mdLength = header.getInt();
+                ByteBuffer content = ByteBuffer.allocate(urlLength + mdLength);
+                readFully(content, offset + 8);
+                String url = new String(content.array(), 0, urlLength, StandardCharsets.UTF_8);
+                byte[] mdBytes = new byte[mdLength];
+                content.position(urlLength);
+                content.get(mdBytes);
+                Metadata md = (Metadata) deserializer.deserializeObject(mdBytes);
+
+                super.add(url, md);
+                in_buffer.add(url);
+                spilledFingerprints.increment(fingerprint(url), -1);
+                numSpilled--;
+            }
+            if (numSpilled == 0) {
+                // nothing left on disk, reuse the file from the start
+                channel.truncate(0);
+                fileLength = 0;
+            }
+        }
+
+        private void addOffset(long offset) {
+            if (numOffsets == offsets.length) {
+                long[] newOffsets = new long[Math.max(16, offsets.length * 2)];
+                for (int i = 0; i < numOffsets; i++) {
+                    newOffsets[i] = offsets[(offsetsHead + i) % offsets.length];
+                }
+                offsets = newOffsets;
+                offsetsHead = 0;
+            }
+            offsets[(offsetsHead + numOffsets) % offsets.length] = offset;
+            numOffsets++;
+        }
+    }
+}
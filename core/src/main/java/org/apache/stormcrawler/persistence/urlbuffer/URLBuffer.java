@@ -114,4 +114,7 @@ public interface URLBuffer {
     }
 
     default void configure(Map<String, Object> stormConf) {}
+
+    /** Releases the resources used by the buffer, called when the spout is closed */
+    default void close() {}
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.storm.metric.api.CountMetric;
+import org.apache.storm.metric.api.MultiCountMetric;
+
+/**
+ * Thread safe version of {@link MultiCountMetric}, for bolts which update their counters from
+ * threads other than the executor's.
+ *
+ * @since 3.1
+ */
+public class ConcurrentMultiCountMetric extends MultiCountMetric {
+
+    private final Map<String, AtomicCountMetric> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public CountMetric scope(String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicCountMetric());
+    }
+
+    @Override
+    public Map<String, Object> getValueAndReset() {
+        Map<String, Object> ret = new HashMap<>();
+        counters.forEach((key, counter) -> ret.put(key, counter.getValueAndReset()));
+        return ret;
+    }
+
+    private static class AtomicCountMetric extends CountMetric {
+
+        private final AtomicLong value = new AtomicLong();
+
+        @Override
+        public void incr() {
+            value.incrementAndGet();
+        }
+
+        @Override
+        public void incrBy(long incrementBy) {
+            if (incrementBy < 0) {
+                throw new IllegalArgumentException("CountMetric cannot be decremented");
+            }
+            value.addAndGet(incrementBy);
+        }
+
+        @Override
+        public Object getValueAndReset() {
+            return value.getAndSet(0);
+        }
+    }
+}
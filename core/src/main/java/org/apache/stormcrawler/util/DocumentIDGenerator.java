@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.Map;
+import org.apache.stormcrawler.Metadata;
+
+/**
+ * Generates the IDs of the documents stored by the status updaters and indexers from their URL.
+ * The class is set with <i>documentid.class</i> and can be set for the status updaters or the
+ * indexers only with <i>status.updater.documentid.class</i> and <i>indexer.documentid.class</i>.
+ * The default is {@link SHA256DocumentIDGenerator}.
+ *
+ * <p>When changing the class for an existing status index,
+ * <i>status.updater.documentid.metadata.key</i> can be set to a metadata key containing the ID
+ * under which a document has already been stored, which is then used instead of generating a new
+ * one. The spout must put the ID of the documents it reads in the metadata under that key, which
+ * must be listed in <i>metadata.persist</i> but not in <i>metadata.transfer</i> so that it does not
+ * get passed to the outlinks. The URLs discovered after the change get new IDs, even if they were
+ * already in the index under an old one. The key is set per component, as the metadata also reaches
+ * the indexers, whose documents have different IDs.
+ *
+ * @since 3.1
+ */
+public abstract class DocumentIDGenerator {
+
+    /** Class to use for generating the IDs. Must extend the class DocumentIDGenerator. */
+    public static final String documentIDClassParamName = "documentid.class";
+
+    /**
+     * Metadata key containing the ID under which a document has already been stored, prefixed with
+     * the name of the component e.g. <i>status.updater.documentid.metadata.key</i>.
+     */
+    public static final String documentIDMetadataKeyParamName = "documentid.metadata.key";
+
+    private String metadataKey;
+
+    /** Configuration of the generator, called by getInstance() */
+    protected void configure(Map<String, Object> conf) {}
+
+    /** Returns the ID found in the metadata if any, or the one generated from the URL */
+    public final String getID(Metadata metadata, String url) {
+        if (metadataKey != null && metadata != null) {
+            String id = metadata.getFirstValue(metadataKey);
+            if (id != null) {
+                return id;
+            }
+        }
+        return generateID(url);
+    }
+
+    /** Generates the ID of a document from its normalised URL */
+    protected abstract String generateID(String url);
+
+    /**
+     * Returns a DocumentIDGenerator instance based on the configuration
+     *
+     * @param prefix prefix of the parameters for the component, e.g. "indexer", checked before
+     *     <i>documentid.class</i> and required for <i>documentid.metadata.key</i>
+     */
+    public static DocumentIDGenerator getInstance(Map<String, Object> conf, String prefix) {
+        String className = ConfUtils.getString(conf, prefix + "." + documentIDClassParamName);
+        if (className == null) {
+            className =
+                    ConfUtils.getString(
+                            conf,
+                            documentIDClassParamName,
+                            SHA256DocumentIDGenerator.class.getName());
+        }
+        DocumentIDGenerator generator;
+        try {
+            generator =
+                    InitialisationUtil.initializeFromQualifiedName(
+                            className, DocumentIDGenerator.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Can't instantiate " + className, e);
+        }
+        generator.metadataKey =
+                ConfUtils.getString(conf, prefix + "." + documentIDMetadataKeyParamName);
+        generator.configure(conf);
+        return generator;
+    }
+}
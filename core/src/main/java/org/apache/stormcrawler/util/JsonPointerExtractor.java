@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gets the values matching a set of JSON pointers in a single pass over a Jackson {@link
+ * JsonParser}, without building a tree of the document. The subtrees which none of the pointers can
+ * match are skipped.
+ *
+ * <p>The values are the same as with {@code mapper.readTree(json).at(pointer).asText()}: the text of
+ * the scalar values, an empty String for objects and arrays and, as Jackson keeps the last value of
+ * a property which occurs more than once in an object, the last one.
+ *
+ * @since 3.1
+ */
+public class JsonPointerExtractor {
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    /** Property name and array index of each segment, per pointer */
+    private final String[][] properties;
+
+    private final int[][] indices;
+
+    public JsonPointerExtractor(List<JsonPointer> pointers) {
+        properties = new String[pointers.size()][];
+        indices = new int[pointers.size()][];
+        for (int i = 0; i < pointers.size(); i++) {
+            List<String> props = new ArrayList<>();
+            List<Integer> idx = new ArrayList<>();
+            for (JsonPointer p = pointers.get(i); !p.matches(); p = p.tail()) {
+                props.add(p.getMatchingProperty());
+                idx.add(p.getMatchingIndex());
+            }
+            properties[i] = props.toArray(new String[0]);
+            indices[i] = idx.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Gets the values of the pointers in a JSON document.
+     *
+     * @return the value for each pointer, in the order they were given, or null when nothing
+     *     matches; null if the document is empty
+     * @throws IOException if the JSON is not valid
+     */
+    public String[] extract(String json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            String[] values = new String[properties.length];
+            int[] active = new int[properties.length];
+            for (int i = 0; i < active.length; i++) {
+                active[i] = i;
+            }
+            walk(parser, active, active.length, 0, values);
+            return values;
+        }
+    }
+
+    /**
+     * Visits the value at the current token of the parser, for the pointers whose first segments
+     * match its path.
+     */
+    private void walk(JsonParser parser, int[] active, int numActive, int depth, String[] values)
+            throws IOException {
+        if (numActive == 0) {
+            parser.skipChildren();
+            return;
+        }
+
+        JsonToken token = parser.currentToken();
+
+        // pointers which end here
+        for (int i = 0; i < numActive; i++) {
+            int e = active[i];
+            if (properties[e].length == depth) {
+                values[e] = token.isStructStart() ? "" : getText(parser, token);
+            }
+        }
+
+        if (token == JsonToken.START_OBJECT) {
+            int[] sub = new int[numActive];
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                int numSub = 0;
+                for (int i = 0; i < numActive; i++) {
+                    int e = active[i];
+                    if (properties[e].length > depth && properties[e][depth].equals(name)) {
+                        // a later occurrence of the same property replaces the previous one
+                        values[e] = null;
+                        sub[numSub++] = e;
+                    }
+                }
+                walk(parser, sub, numSub, depth + 1, values);
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int[] sub = new int[numActive];
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                int numSub = 0;
+                for (int i = 0; i < numActive; i++) {
+                    int e = active[i];
+                    if (properties[e].length > depth && indices[e][depth] == index) {
+                        sub[numSub++] = e;
+                    }
+                }
+                walk(parser, sub, numSub, depth + 1, values);
+                index++;
+            }
+        }
+    }
+
+    /** Same as JsonNode.asText() for the node which Jackson would have built */
+    private static String getText(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return Integer.toString(parser.getIntValue());
+                    case LONG:
+                        return Long.toString(parser.getLongValue());
+                    default:
+                        return parser.getBigIntegerValue().toString();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return Double.toString(parser.getDoubleValue());
+            case VALUE_NULL:
+                return "null";
+            default:
+                return parser.getText();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+/**
+ * Open-addressing hash table with linear probing from long keys to int values, meant for hashes
+ * such as URL fingerprints which are already well distributed. Takes between 16 and 32 bytes per
+ * entry. The key 0 marks the empty slots and is stored as 1, so these two keys are considered the
+ * same. Removals shift the following entries back instead of leaving tombstones.
+ *
+ * <p>Not thread safe.
+ *
+ * @since 3.1
+ */
+public class LongIntHashMap {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private long[] keys = new long[MIN_CAPACITY];
+
+    private int[] values = new int[MIN_CAPACITY];
+
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    private static long normalize(long key) {
+        return key == 0 ? 1 : key;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
+
+    /** Returns the value for a key or the value given if the key is not in the map */
+    public int get(long key, int missing) {
+        int i = indexOf(normalize(key));
+        return i >= 0 ? values[i] : missing;
+    }
+
+    public void put(long key, int value) {
+        key = normalize(key);
+        int i = indexOf(key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        i = -1 - i;
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        // load factor of 0.75 max
+        if (size * 4L >= keys.length * 3L) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /** Adds a value to the one of a key, removing the key if the result is 0 */
+    public void increment(long key, int delta) {
+        int value = get(key, 0) + delta;
+        if (value == 0) {
+            remove(key);
+        } else {
+            put(key, value);
+        }
+    }
+
+    public void remove(long key) {
+        int i = indexOf(normalize(key));
+        if (i < 0) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == 0) {
+                break;
+            }
+            int k = slot(keys[j], mask);
+            // the entry at j can't move before its slot k
+            boolean stays = i <= j ? i < k && k <= j : i < k || k <= j;
+            if (!stays) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        values[i] = 0;
+        size--;
+        // load factor of 0.25 min, so that it is 0.5 after shrinking
+        if (keys.length > MIN_CAPACITY && size * 4L < keys.length) {
+            resize(keys.length / 2);
+        }
+    }
+
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        values = new int[MIN_CAPACITY];
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) {
+                continue;
+            }
+            int j = slot(oldKeys[i], mask);
+            while (keys[j] != 0) {
+                j = (j + 1) & mask;
+            }
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
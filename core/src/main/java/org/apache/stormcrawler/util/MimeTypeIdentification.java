@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import org.apache.commons.lang.StringUtils;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Cheap identification of the mime type of the most common web documents, used before resorting to
+ * a full detection with Tika. A type is returned only if the Content-Type sent by the server is
+ * confirmed by the first bytes of the content, for instance text/html for a document starting with
+ * a HTML doctype or tag, or application/pdf for a document starting with %PDF-. Returns null in any
+ * other case.
+ *
+ * <p>Unlike Tika, the extension of the URL is not used to refine the type found.
+ *
+ * @since 3.1
+ */
+public class MimeTypeIdentification {
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /** Lowercase prefixes for HTML documents, must be followed by a space or closing bracket */
+    private static final byte[][] HTML_PREFIXES = {ascii("<!doctype html"), ascii("<html")};
+
+    private static final String[] MAGIC_TYPES = {
+        "application/pdf", "image/png", "image/gif", "image/jpeg"
+    };
+
+    private static final byte[][] MAGIC_BYTES = {
+        ascii("%PDF-"),
+        {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'},
+        ascii("GIF8"),
+        {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}
+    };
+
+    private MimeTypeIdentification() {}
+
+    /**
+     * Returns the mime type of the content if the one declared by the server can be trusted or null
+     * if a full detection is needed.
+     */
+    public static String getMimeTypeFast(final String httpCT, final byte[] content) {
+        if (StringUtils.isBlank(httpCT) || content == null) {
+            return null;
+        }
+        final MediaType declared = MediaType.parse(httpCT);
+        if (declared == null) {
+            return null;
+        }
+        final String baseType = declared.getBaseType().toString().toLowerCase(Locale.ROOT);
+
+        if (baseType.equals("text/html")) {
+            // same as what Tika returns i.e. with the parameters from the server
+            return looksLikeHTML(content) ? declared.toString() : null;
+        }
+
+        for (int i = 0; i < MAGIC_TYPES.length; i++) {
+            if (MAGIC_TYPES[i].equals(baseType)) {
+                return startsWith(content, 0, MAGIC_BYTES[i], false) ? baseType : null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether the content starts with a HTML doctype or tag, ignoring any UTF-8 byte order mark and
+     * leading whitespaces
+     */
+    static boolean looksLikeHTML(final byte[] content) {
+        int pos = 0;
+        if (startsWith(content, 0, UTF8_BOM, false)) {
+            pos = UTF8_BOM.length;
+        }
+        while (pos < content.length && isWhitespace(content[pos])) {
+            pos++;
+        }
+        for (byte[] prefix : HTML_PREFIXES) {
+            if (startsWith(content, pos, prefix, true)) {
+                final int end = pos + prefix.length;
+                return end < content.length && (isWhitespace(content[end]) || content[end] == '>');
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(
+            final byte[] content, final int offset, final byte[] prefix, final boolean ignoreCase) {
+        if (content.length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            byte b = content[offset + i];
+            if (ignoreCase && b >= 'A' && b <= 'Z') {
+                b = (byte) (b + ('a' - 'A'));
+            }
+            if (b != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Uses the 128 bit MurmurHash3 of the URL encoded in base64url without padding, i.e. a 22 character
+ * string made of letters, digits, '-' and '_'. Much faster to compute than a SHA-256 digest and
+ * about three times shorter to store and index than its hexadecimal form. Two URLs get the same ID
+ * with a probability of about n<sup>2</sup> / 2<sup>129</sup> for n URLs, which is negligible, but
+ * unlike with a cryptographic hash it is possible to craft URLs with the same ID on purpose.
+ *
+ * @since 3.1
+ */
+public class Murmur3DocumentIDGenerator extends DocumentIDGenerator {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    @Override
+    protected String generateID(String url) {
+        long[] hash = MurmurHash3.hash128(url.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (hash[0] >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (hash[1] >>> (56 - 8 * i));
+        }
+        return ENCODER.encodeToString(bytes);
+    }
+}
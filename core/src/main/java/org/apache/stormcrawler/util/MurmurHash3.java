@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+/**
+ * Implementation of the 128 bit x64 variant of MurmurHash3
+ * (https://github.com/aappleby/smhasher), a fast non-cryptographic hash function. Produces the same
+ * values as the reference MurmurHash3_x64_128.
+ *
+ * @since 3.1
+ */
+public class MurmurHash3 {
+
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    private MurmurHash3() {}
+
+    /** Returns the two halves of the hash of the whole array with a seed of 0 */
+    public static long[] hash128(final byte[] data) {
+        return hash128(data, 0, data.length, 0L);
+    }
+
+    public static long[] hash128(
+            final byte[] data, final int offset, final int length, final long seed) {
+        long h1 = seed;
+        long h2 = seed;
+        final int blocksEnd = offset + (length & ~15);
+        int pos = offset;
+
+        while (pos < blocksEnd) {
+            long k1 = getLong(data, pos);
+            long k2 = getLong(data, pos + 8);
+            pos += 16;
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52DCE729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+
+        // tail of up to 15 bytes
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15:
+                k2 ^= (data[pos + 14] & 0xFFL) << 48;
+            // fall through
+            case 14:
+                k2 ^= (data[pos + 13] & 0xFFL) << 40;
+            // fall through
+            case 13:
+                k2 ^= (data[pos + 12] & 0xFFL) << 32;
+            // fall through
+            case 12:
+                k2 ^= (data[pos + 11] & 0xFFL) << 24;
+            // fall through
+            case 11:
+                k2 ^= (data[pos + 10] & 0xFFL) << 16;
+            // fall through
+            case 10:
+                k2 ^= (data[pos + 9] & 0xFFL) << 8;
+            // fall through
+            case 9:
+                k2 ^= data[pos + 8] & 0xFFL;
+                h2 ^= mixK2(k2);
+            // fall through
+            case 8:
+                k1 ^= (data[pos + 7] & 0xFFL) << 56;
+            // fall through
+            case 7:
+                k1 ^= (data[pos + 6] & 0xFFL) << 48;
+            // fall through
+            case 6:
+                k1 ^= (data[pos + 5] & 0xFFL) << 40;
+            // fall through
+            case 5:
+                k1 ^= (data[pos + 4] & 0xFFL) << 32;
+            // fall through
+            case 4:
+                k1 ^= (data[pos + 3] & 0xFFL) << 24;
+            // fall through
+            case 3:
+                k1 ^= (data[pos + 2] & 0xFFL) << 16;
+            // fall through
+            case 2:
+                k1 ^= (data[pos + 1] & 0xFFL) << 8;
+            // fall through
+            case 1:
+                k1 ^= data[pos] & 0xFFL;
+                h1 ^= mixK1(k1);
+                break;
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        return new long[] {h1, h2};
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Little-endian read of 8 bytes */
+    private static long getLong(final byte[] data, final int pos) {
+        return (data[pos] & 0xFFL)
+                | (data[pos + 1] & 0xFFL) << 8
+                | (data[pos + 2] & 0xFFL) << 16
+                | (data[pos + 3] & 0xFFL) << 24
+                | (data[pos + 4] & 0xFFL) << 32
+                | (data[pos + 5] & 0xFFL) << 40
+                | (data[pos + 6] & 0xFFL) << 48
+                | (data[pos + 7] & 0xFFL) << 56;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+/**
+ * Implementation of the xxHash64 algorithm (https://github.com/Cyan4973/xxHash), a fast
+ * non-cryptographic hash function. Produces the same values as the reference implementation.
+ *
+ * @since 3.1
+ */
+public class XXHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private XXHash64() {}
+
+    /** Returns the hash of the whole array with a seed of 0 */
+    public static long hash(final byte[] data) {
+        return hash(data, 0, data.length, 0L);
+    }
+
+    /** Returns the hash of the whole array as a 16 character hexadecimal string */
+    public static String hashHex(final byte[] data) {
+        return toHex(hash(data));
+    }
+
+    /** Returns a 64 bit value as a 16 character hexadecimal string */
+    public static String toHex(final long value) {
+        final String hex = Long.toHexString(value);
+        if (hex.length() == 16) {
+            return hex;
+        }
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    public static long hash(
+            final byte[] data, final int offset, final int length, final long seed) {
+        final int end = offset + length;
+        int pos = offset;
+        long h;
+
+        if (length >= 32) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            final int limit = end - 32;
+            do {
+                v1 = round(v1, getLong(data, pos));
+                v2 = round(v2, getLong(data, pos + 8));
+                v3 = round(v3, getLong(data, pos + 16));
+                v4 = round(v4, getLong(data, pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+
+            h =
+                    Long.rotateLeft(v1, 1)
+                            + Long.rotateLeft(v2, 7)
+                            + Long.rotateLeft(v3, 12)
+                            + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+
+        h += length;
+
+        while (pos + 8 <= end) {
+            h ^= round(0, getLong(data, pos));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+            pos += 8;
+        }
+
+        if (pos + 4 <= end) {
+            h ^= (getInt(data, pos) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+
+        while (pos < end) {
+            h ^= (data[pos] & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+            pos++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, final long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, final long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    /** Little-endian read of 8 bytes */
+    private static long getLong(final byte[] data, final int pos) {
+        return (data[pos] & 0xFFL)
+                | (data[pos + 1] & 0xFFL) << 8
+                | (data[pos + 2] & 0xFFL) << 16
+                | (data[pos + 3] & 0xFFL) << 24
+                | (data[pos + 4] & 0xFFL) << 32
+                | (data[pos + 5] & 0xFFL) << 40
+                | (data[pos + 6] & 0xFFL) << 48
+                | (data[pos + 7] & 0xFFL) << 56;
+    }
+
+    /** Little-endian read of 4 bytes */
+    private static int getInt(final byte[] data, final int pos) {
+        return (data[pos] & 0xFF)
+                | (data[pos + 1] & 0xFF) << 8
+                | (data[pos + 2] & 0xFF) << 16
+                | (data[pos + 3] & 0xFF) << 24;
+    }
+}
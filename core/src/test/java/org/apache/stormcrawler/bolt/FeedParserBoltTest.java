@@ -25,6 +25,7 @@ import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.TestUtil;
 import org.apache.stormcrawler.parse.ParsingTester;
+import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.HttpHeaders;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
 import org.junit.jupiter.api.Assertions;
@@ -82,6 +83,85 @@ class FeedParserBoltTest extends ParsingTester {
         checkOutput();
     }
 
+    @Test
+    void testStreamingFeedParsing() throws IOException {
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("feed.streaming", true);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        Metadata metadata = new Metadata();
+        metadata.setValue(FeedParserBolt.isFeedKey, "true");
+        parse("http://www.guardian.com/Feed.xml", "guardian.rss", metadata);
+        checkOutput();
+        Metadata outlinkMetadata =
+                (Metadata) output.getEmitted(Constants.StatusStreamName).get(0).get(1);
+        Assertions.assertEquals(
+                "Tony Blair accuses Jeremy Corbyn of standing by as Syria is bombed",
+                outlinkMetadata.getFirstValue("feed.title"));
+        Assertions.assertNotNull(outlinkMetadata.getFirstValue("feed.publishedDate"));
+    }
+
+    @Test
+    void testStreamingAtomMarkup() throws IOException {
+        // the markup of the xhtml titles and summaries is kept as with ROME
+        prepareParserBolt("test.parsefilters.json");
+        Metadata metadata = new Metadata();
+        metadata.setValue(FeedParserBolt.isFeedKey, "true");
+        parse("http://example.com/feed.atom", "markup.atom", metadata);
+        List<List<Object>> expected = output.getEmitted(Constants.StatusStreamName);
+
+        setupParserBolt();
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("feed.streaming", true);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        metadata = new Metadata();
+        metadata.setValue(FeedParserBolt.isFeedKey, "true");
+        parse("http://example.com/feed.atom", "markup.atom", metadata);
+        List<List<Object>> emitted = output.getEmitted(Constants.StatusStreamName);
+
+        // two entries and the status of the feed
+        Assertions.assertEquals(3, emitted.size());
+        Assertions.assertEquals(expected.size(), emitted.size());
+        for (int i = 0; i < 2; i++) {
+            Metadata md = (Metadata) emitted.get(i).get(1);
+            Metadata expectedMd = (Metadata) expected.get(i).get(1);
+            Assertions.assertEquals(
+                    expectedMd.getFirstValue("feed.title"), md.getFirstValue("feed.title"));
+            Assertions.assertEquals(
+                    expectedMd.getFirstValue("feed.description"),
+                    md.getFirstValue("feed.description"));
+        }
+        Metadata xhtml = (Metadata) emitted.get(0).get(1);
+        Assertions.assertEquals(
+                "<div xmlns=\"http://www.w3.org/1999/xhtml\">An <b>xhtml</b> title</div>",
+                xhtml.getFirstValue("feed.title"));
+        Assertions.assertEquals(
+                "<div xmlns=\"http://www.w3.org/1999/xhtml\">Some <a"
+                        + " href=\"http://example.com/?a=1&amp;b=2\">linked</a> text<br />&amp;"
+                        + " more</div>",
+                xhtml.getFirstValue("feed.description"));
+        // the markup of the html ones is escaped in the feed
+        Metadata html = (Metadata) emitted.get(1).get(1);
+        Assertions.assertEquals("An <i>html</i> title", html.getFirstValue("feed.title"));
+        Assertions.assertEquals(
+                "Some <b>escaped</b> markup", html.getFirstValue("feed.description"));
+    }
+
+    @Test
+    void testSkipUnchanged() throws IOException {
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("feed.streaming", true);
+        parserConfig.put("feed.skip.unchanged", true);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        Metadata metadata = new Metadata();
+        metadata.setValue(FeedParserBolt.isFeedKey, "true");
+        // all the entries were published before
+        metadata.setValue(FeedParserBolt.lastProcessedKey, "2020-01-01T00:00:00Z");
+        parse("http://www.guardian.com/Feed.xml", "guardian.rss", metadata);
+        List<List<Object>> emitted = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, emitted.size());
+        Assertions.assertEquals(Status.FETCHED, emitted.get(0).get(2));
+    }
+
     @Test
     void testNonFeedParsing() throws IOException {
         prepareParserBolt("test.parsefilters.json");
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.bolt;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Tuple;
+import org.apache.stormcrawler.Constants;
+import org.apache.stormcrawler.TestOutputCollector;
+import org.apache.stormcrawler.TestUtil;
+import org.apache.stormcrawler.persistence.Status;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FetcherParserBoltTest extends AbstractFetcherBoltTest {
+
+    @BeforeEach
+    void setUpContext() throws Exception {
+        bolt = new FetcherParserBolt();
+    }
+
+    @Test
+    void testParsed(WireMockRuntimeInfo wmRuntimeInfo) {
+        String html = "<html><body>some text <a href='/page'>link</a></body></html>";
+        TestOutputCollector output = fetch(wmRuntimeInfo, "text/html", html);
+        // acked once by the fetching thread and not by the parser
+        Assertions.assertEquals(1, output.getAckedTuples().size());
+        Assertions.assertEquals(0, output.getFailedTuples().size());
+        // one outlink
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statusTuples.size());
+        // the parse result without the binary content
+        List<List<Object>> parsed = output.getEmitted();
+        Assertions.assertEquals(1, parsed.size());
+        Assertions.assertEquals(0, ((byte[]) parsed.get(0).get(1)).length);
+        Assertions.assertEquals("some text link", parsed.get(0).get(3));
+    }
+
+    @Test
+    void testParsingError(WireMockRuntimeInfo wmRuntimeInfo) {
+        // not HTML, treated as an error by default
+        TestOutputCollector output = fetch(wmRuntimeInfo, "application/pdf", "%PDF-1.4\n%");
+        Assertions.assertEquals(1, output.getAckedTuples().size());
+        Assertions.assertEquals(0, output.getFailedTuples().size());
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statusTuples.size());
+        Assertions.assertEquals(Status.ERROR, statusTuples.get(0).get(2));
+        Assertions.assertEquals(0, output.getEmitted().size());
+    }
+
+    private TestOutputCollector fetch(
+            WireMockRuntimeInfo wmRuntimeInfo, String contentType, String body) {
+        stubFor(
+                get(urlMatching(".+"))
+                        .willReturn(
+                                aResponse()
+                                        .withStatus(200)
+                                        .withHeader("Content-Type", contentType)
+                                        .withBody(body)));
+        TestOutputCollector output = new TestOutputCollector();
+        Map config = new HashMap();
+        config.put("http.agent.name", "this_is_only_a_test");
+        bolt.prepare(config, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        Tuple tuple = mock(Tuple.class);
+        when(tuple.getSourceComponent()).thenReturn("source");
+        when(tuple.getStringByField("url"))
+                .thenReturn("http://localhost:" + wmRuntimeInfo.getHttpPort() + "/");
+        when(tuple.getValueByField("metadata")).thenReturn(null);
+        bolt.execute(tuple);
+        while (output.getAckedTuples().size() == 0 && output.getFailedTuples().size() == 0) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+            }
+        }
+        // leave time for a second ack, if any
+        try {
+            Thread.sleep(500);
+        } catch (InterruptedException e) {
+        }
+        return output;
+    }
+}
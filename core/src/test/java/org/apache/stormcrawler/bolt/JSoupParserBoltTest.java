@@ -16,12 +16,27 @@
  */
 package org.apache.stormcrawler.bolt;
 
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.storm.Config;
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.TestUtil;
@@ -231,4 +246,95 @@ class JSoupParserBoltTest extends ParsingTester {
         Assertions.assertEquals(
                 "http://www.javascriptlinks.com/mylink", statusTuples.get(0).get(0));
     }
+
+    @Test
+    void testParsingThreads() throws IOException {
+        stormConf.put("jsoup.threads.number", 4);
+        stormConf.put("jsoup.max.inflight", 3);
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        for (int i = 0; i < tests.length; i++) {
+            parse(
+                    "http://www.digitalpebble.com/" + i,
+                    tests[i].getBytes(StandardCharsets.UTF_8),
+                    new Metadata());
+        }
+        // the last documents get emitted on tick tuples
+        Tuple tick = mock(Tuple.class);
+        when(tick.getSourceComponent()).thenReturn(org.apache.storm.Constants.SYSTEM_COMPONENT_ID);
+        when(tick.getSourceStreamId()).thenReturn(org.apache.storm.Constants.SYSTEM_TICK_STREAM_ID);
+        await().atMost(10, TimeUnit.SECONDS)
+                .until(
+                        () -> {
+                            bolt.execute(tick);
+                            return output.getAckedTuples().size() == tests.length;
+                        });
+        // emitted in the order in which they were received
+        List<List<Object>> parsed = output.getEmitted();
+        Assertions.assertEquals(tests.length, parsed.size());
+        for (int i = 0; i < tests.length; i++) {
+            Assertions.assertEquals("http://www.digitalpebble.com/" + i, parsed.get(i).get(0));
+        }
+    }
+
+    @Test
+    void testTickWithoutThreads() throws IOException {
+        Assertions.assertEquals(
+                1, bolt.getComponentConfiguration().get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        Tuple tick = mock(Tuple.class);
+        when(tick.getSourceComponent()).thenReturn(org.apache.storm.Constants.SYSTEM_COMPONENT_ID);
+        when(tick.getSourceStreamId()).thenReturn(org.apache.storm.Constants.SYSTEM_TICK_STREAM_ID);
+        // nothing deferred
+        bolt.execute(tick);
+        Assertions.assertEquals(0, output.getEmitted().size());
+        Assertions.assertEquals(0, output.getAckedTuples().size());
+    }
+
+    @Test
+    void testThreadsRequireThreadSafeFilters() {
+        stormConf.put("jsoup.threads.number", 4);
+        stormConf.put("parsefilters.config.file", "test.parsefilters.json");
+        TopologyContext context = TestUtil.getMockedTopologyContext();
+        bolt.prepare(stormConf, context, new OutputCollector(output));
+        verify(context).registerMetric(eq("parsing_inflight"), any(IMetric.class), anyInt());
+        bolt.cleanup();
+
+        // the filter used here does not declare that it is thread safe
+        stormConf.put("parsefilters.config.file", "test.subdocfilter.json");
+        context = TestUtil.getMockedTopologyContext();
+        bolt = new JSoupParserBolt();
+        bolt.prepare(stormConf, context, new OutputCollector(output));
+        verify(context, never())
+                .registerMetric(eq("parsing_inflight"), any(IMetric.class), anyInt());
+    }
+
+    @Test
+    void testSkipUnchanged() throws IOException {
+        stormConf.put("jsoup.skip.unchanged", true);
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        byte[] content = tests[0].getBytes(StandardCharsets.UTF_8);
+
+        // signature of another content - gets parsed
+        Metadata metadata = new Metadata();
+        metadata.setValue("signature", DigestUtils.md5Hex("something else"));
+        parse("http://www.digitalpebble.com/changed", content, metadata);
+        Assertions.assertEquals(1, output.getEmitted().size());
+        Assertions.assertNull(metadata.getFirstValue("signatureOld"));
+
+        // same signature - straight to the status stream
+        metadata = new Metadata();
+        String signature = DigestUtils.md5Hex(content);
+        metadata.setValue("signature", signature);
+        parse("http://www.digitalpebble.com/unchanged", content, metadata);
+        Assertions.assertEquals(1, output.getEmitted().size());
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statusTuples.size());
+        Assertions.assertEquals(
+                "http://www.digitalpebble.com/unchanged", statusTuples.get(0).get(0));
+        Assertions.assertEquals(Status.FETCHED, statusTuples.get(0).get(2));
+        Metadata emitted = (Metadata) statusTuples.get(0).get(1);
+        Assertions.assertEquals(signature, emitted.getFirstValue("signature"));
+        Assertions.assertEquals(signature, emitted.getFirstValue("signatureOld"));
+        Assertions.assertEquals(2, output.getAckedTuples().size());
+    }
 }
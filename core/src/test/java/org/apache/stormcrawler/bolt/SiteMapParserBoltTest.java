@@ -29,8 +29,10 @@ import org.apache.storm.task.OutputCollector;
 import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.TestOutputCollector;
 import org.apache.stormcrawler.TestUtil;
 import org.apache.stormcrawler.parse.ParsingTester;
+import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.HttpHeaders;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -89,6 +91,88 @@ class SiteMapParserBoltTest extends ParsingTester {
         Assertions.assertEquals(50001, output.getEmitted(Constants.StatusStreamName).size());
     }
 
+    @Test
+    void testStreamingSitemapParsing() throws IOException {
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("sitemap.streaming", true);
+        parserConfig.put("sitemap.streaming.batch.size", 2);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        Metadata metadata = new Metadata();
+        metadata.setValue(SiteMapParserBolt.isSitemapKey, "true");
+        metadata.setValue(HttpHeaders.CONTENT_TYPE, "application/xml");
+        parse("http://www.digitalpebble.com/sitemap.xml", "digitalpebble.sitemap.xml", metadata);
+        List<List<Object>> emitted = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(6, emitted.size());
+        for (int i = 0; i < emitted.size() - 1; i++) {
+            Assertions.assertEquals(Status.DISCOVERED, emitted.get(i).get(2));
+            Metadata parsedMetadata = (Metadata) emitted.get(i).get(1);
+            Assertions.assertEquals(
+                    "false", parsedMetadata.getFirstValue(SiteMapParserBolt.isSitemapKey));
+        }
+        Assertions.assertEquals(Status.FETCHED, emitted.get(emitted.size() - 1).get(2));
+    }
+
+    @Test
+    void testStreamingSitemapIndexParsing() throws IOException {
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("sitemap.streaming", true);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        Metadata metadata = new Metadata();
+        metadata.setValue(SiteMapParserBolt.isSitemapKey, "true");
+        metadata.setValue(HttpHeaders.CONTENT_TYPE, "application/xml");
+        parse(
+                "http://www.tripadvisor.com/sitemap-index.xml",
+                "tripadvisor.sitemap.index.xml",
+                metadata);
+        for (List<Object> fields : output.getEmitted(Constants.StatusStreamName)) {
+            Metadata parsedMetadata = (Metadata) fields.get(1);
+            Assertions.assertEquals(
+                    "true", parsedMetadata.getFirstValue(SiteMapParserBolt.isSitemapKey));
+        }
+        Assertions.assertEquals(5, output.getEmitted(Constants.StatusStreamName).size());
+    }
+
+    @Test
+    void testStreamingGzipSitemapParsing() throws IOException {
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("sitemap.streaming", true);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        Metadata metadata = new Metadata();
+        metadata.setValue(SiteMapParserBolt.isSitemapKey, "true");
+        parse("https://www.tripadvisor.com/sitemap.xml.gz", "tripadvisor.sitemap.xml.gz", metadata);
+        Assertions.assertEquals(50001, output.getEmitted(Constants.StatusStreamName).size());
+    }
+
+    @Test
+    void testSkipUnchanged() throws IOException {
+        Map<String, Object> parserConfig = new HashMap<>();
+        parserConfig.put("sitemap.skip.unchanged", true);
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        Metadata metadata = new Metadata();
+        metadata.setValue(SiteMapParserBolt.isSitemapKey, "true");
+        metadata.setValue(HttpHeaders.CONTENT_TYPE, "application/xml");
+        // all the entries were modified on 2012-12-05
+        metadata.setValue(SiteMapParserBolt.lastProcessedKey, "2020-01-01T00:00:00Z");
+        parse("http://www.digitalpebble.com/sitemap.xml", "digitalpebble.sitemap.xml", metadata);
+        List<List<Object>> emitted = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, emitted.size());
+        Assertions.assertEquals(Status.FETCHED, emitted.get(0).get(2));
+        Metadata parsedMetadata = (Metadata) emitted.get(0).get(1);
+        Assertions.assertNotEquals(
+                "2020-01-01T00:00:00Z",
+                parsedMetadata.getFirstValue(SiteMapParserBolt.lastProcessedKey));
+
+        // processed before the last modification
+        output = new TestOutputCollector();
+        prepareParserBolt("test.parsefilters.json", parserConfig);
+        metadata = new Metadata();
+        metadata.setValue(SiteMapParserBolt.isSitemapKey, "true");
+        metadata.setValue(HttpHeaders.CONTENT_TYPE, "application/xml");
+        metadata.setValue(SiteMapParserBolt.lastProcessedKey, "2010-01-01T00:00:00Z");
+        parse("http://www.digitalpebble.com/sitemap.xml", "digitalpebble.sitemap.xml", metadata);
+        Assertions.assertEquals(6, output.getEmitted(Constants.StatusStreamName).size());
+    }
+
     @Test
     void testSitemapParsingWithImageExtensions() throws IOException {
         Map<String, Object> parserConfig = new HashMap<>();
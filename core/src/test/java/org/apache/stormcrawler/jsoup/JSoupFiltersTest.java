@@ -16,13 +16,18 @@
  */
 package org.apache.stormcrawler.jsoup;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.storm.task.OutputCollector;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.TestUtil;
 import org.apache.stormcrawler.bolt.JSoupParserBolt;
+import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.parse.ParsingTester;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -92,4 +97,41 @@ class JSoupFiltersTest extends ParsingTester {
         parse("http://www.digitalpebble.com", "digitalpebble.com.html");
         Assertions.assertEquals(16, output.getEmitted("status").size());
     }
+
+    @Test
+    void testSingleTraversal() throws IOException {
+        org.jsoup.nodes.Document doc =
+                org.jsoup.parser.Parser.htmlParser()
+                        .parseInput(
+                                new String(
+                                        readContent("digitalpebble.com.html"),
+                                        StandardCharsets.UTF_8),
+                                "http://www.digitalpebble.com");
+        // the first expression of each pair is matched in the common traversal
+        // the union is evaluated separately
+        String[] expressions = {
+            "//a/@href",
+            "//a/@href | //nothing",
+            "//SPAN[@class=\"concept\"]/tidyText()",
+            "//SPAN[@class=\"concept\"]/tidyText() | //nothing",
+            "//META[@name]/@content",
+            "//META[@name]/@content | //nothing",
+            "//body//a/@href",
+            "//body//a/@href | //nothing"
+        };
+        ObjectNode params = new ObjectMapper().createObjectNode();
+        for (int i = 0; i < expressions.length; i++) {
+            params.put("key" + i, expressions[i]);
+        }
+        XPathFilter filter = new XPathFilter();
+        filter.configure(new HashMap<>(), params);
+        ParseResult parse = new ParseResult();
+        filter.filter("http://www.digitalpebble.com", null, doc, parse);
+        Metadata metadata = parse.get("http://www.digitalpebble.com").getMetadata();
+        for (int i = 0; i < expressions.length; i += 2) {
+            String[] values = metadata.getValues("key" + i);
+            Assertions.assertNotNull(values, expressions[i]);
+            Assertions.assertArrayEquals(values, metadata.getValues("key" + (i + 1)));
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.stormcrawler.Constants;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.bolt.JSoupParserBolt;
+import org.apache.stormcrawler.parse.ParsingBudget.BudgetReader;
+import org.apache.stormcrawler.persistence.Status;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ParsingBudgetTest extends ParsingTester {
+
+    @BeforeEach
+    void setupParserBolt() {
+        bolt = new JSoupParserBolt();
+        setupParserBolt(bolt);
+    }
+
+    @Test
+    void testWithinBudget() throws IOException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(ParsingBudget.MAX_TIME_PARAM_NAME, 60000);
+        conf.put(ParsingBudget.MAX_TAGS_PARAM_NAME, 1000000);
+        ParsingBudget budget = new ParsingBudget(conf);
+        String html = new String(readContent("stackexception.html"), StandardCharsets.UTF_8);
+        BudgetReader reader = budget.newReader(html);
+        Document doc = Parser.htmlParser().parseInput(reader, "http://polloxniner.blogspot.com");
+        Assertions.assertNull(reader.getBreach());
+        Document expected = Parser.htmlParser().parseInput(html, "http://polloxniner.blogspot.com");
+        Assertions.assertEquals(expected.html(), doc.html());
+    }
+
+    @Test
+    void testPartialDocument() throws IOException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(ParsingBudget.MAX_TAGS_PARAM_NAME, 100);
+        prepareParserBolt("test.parsefilters.json", conf);
+        parse("http://polloxniner.blogspot.com", "stackexception.html", new Metadata());
+        List<List<Object>> emitted = output.getEmitted();
+        Assertions.assertEquals(1, emitted.size());
+        Metadata m = (Metadata) emitted.get(0).get(2);
+        Assertions.assertEquals("tags", m.getFirstValue("parse.budget.exceeded"));
+        // fewer outlinks than with the full document
+        Assertions.assertTrue(output.getEmitted(Constants.StatusStreamName).size() < 164);
+    }
+
+    @Test
+    void testError() throws IOException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(ParsingBudget.MAX_CHARS_PARAM_NAME, 1000);
+        conf.put(ParsingBudget.ERROR_PARAM_NAME, true);
+        prepareParserBolt("test.parsefilters.json", conf);
+        parse("http://polloxniner.blogspot.com", "stackexception.html", new Metadata());
+        Assertions.assertEquals(0, output.getEmitted().size());
+        List<List<Object>> statuses = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statuses.size());
+        Assertions.assertEquals(Status.ERROR, statuses.get(0).get(2));
+    }
+}
@@ -86,4 +86,37 @@ class TextExtractorTest {
         // one character gets added
         assertEquals(5000015, text.length());
     }
+
+    @Test
+    void testPatternPriority() throws IOException {
+        Config conf = new Config();
+        List<String> listinc = new LinkedList<>();
+        listinc.add("ARTICLE");
+        listinc.add("DIV[id=\"maincontent\"]");
+        conf.put(TextExtractor.INCLUDE_PARAM_NAME, listinc);
+        TextExtractor extractor = new TextExtractor(conf);
+        String content = "<html><div id='maincontent'>main</div><article>article</article></html>";
+        Document jsoupDoc = Parser.htmlParser().parseInput(content, "http://stormcrawler.net");
+        assertEquals("article", extractor.text(jsoupDoc.body()));
+        // the extractor gets reused
+        content = "<html>the<div id='maincontent'>main</div>page</html>";
+        jsoupDoc = Parser.htmlParser().parseInput(content, "http://stormcrawler.net");
+        assertEquals("main", extractor.text(jsoupDoc.body()));
+        content = "<html>the page</html>";
+        jsoupDoc = Parser.htmlParser().parseInput(content, "http://stormcrawler.net");
+        assertEquals("the page", extractor.text(jsoupDoc.body()));
+    }
+
+    @Test
+    void testNestedMatches() throws IOException {
+        Config conf = new Config();
+        conf.put(TextExtractor.INCLUDE_PARAM_NAME, "DIV");
+        conf.put(TextExtractor.EXCLUDE_PARAM_NAME, "SCRIPT");
+        TextExtractor extractor = new TextExtractor(conf);
+        String content =
+                "<html>the<div>main<div>content<script>x</script></div></div>page<div>end</div></html>";
+        Document jsoupDoc = Parser.htmlParser().parseInput(content, "http://stormcrawler.net");
+        String text = extractor.text(jsoupDoc.body());
+        assertEquals("main content \n content \n end", text);
+    }
 }
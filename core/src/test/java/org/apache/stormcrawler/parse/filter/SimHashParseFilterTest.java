@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse.filter;
+
+import java.io.IOException;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.bolt.JSoupParserBolt;
+import org.apache.stormcrawler.parse.ParsingTester;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SimHashParseFilterTest extends ParsingTester {
+
+    @BeforeEach
+    void setupParserBolt() {
+        bolt = new JSoupParserBolt();
+        setupParserBolt(bolt);
+    }
+
+    private Metadata parseFile(String filename, String previous) throws IOException {
+        Metadata metadata = new Metadata();
+        if (previous != null) {
+            metadata.setValue("simhash", previous);
+        }
+        parse("http://www.citynews.com/" + filename, "neardup/" + filename, metadata);
+        int last = output.getEmitted().size() - 1;
+        return (Metadata) output.getEmitted().get(last).get(2);
+    }
+
+    @Test
+    void testNearDuplicates() throws IOException {
+        prepareParserBolt("simhash.parsefilters.json");
+
+        Metadata metadata = parseFile("article.html", null);
+        String fingerprint = metadata.getFirstValue("simhash");
+        Assertions.assertEquals(16, fingerprint.length());
+        Assertions.assertNull(metadata.getFirstValue(SimHashParseFilter.NEAR_DUPLICATE_KEY));
+
+        // same article with a different date, ad and number of comments
+        metadata = parseFile("article-updated.html", fingerprint);
+        String updated = metadata.getFirstValue("simhash");
+        Assertions.assertEquals(fingerprint, metadata.getFirstValue("simhashOld"));
+        Assertions.assertTrue(SimHashParseFilter.distance(fingerprint, updated) <= 3);
+        Assertions.assertEquals(
+                "true", metadata.getFirstValue(SimHashParseFilter.NEAR_DUPLICATE_KEY));
+
+        // different article with the same boilerplate
+        metadata = parseFile("other-article.html", fingerprint);
+        String other = metadata.getFirstValue("simhash");
+        Assertions.assertTrue(SimHashParseFilter.distance(fingerprint, other) > 10);
+        Assertions.assertNull(metadata.getFirstValue(SimHashParseFilter.NEAR_DUPLICATE_KEY));
+    }
+
+    @Test
+    void testFingerprint() {
+        Assertions.assertEquals(0L, SimHashParseFilter.fingerprint(" ... ", 3));
+        // case and punctuation are ignored
+        Assertions.assertEquals(
+                SimHashParseFilter.fingerprint("Hello, World!", 3),
+                SimHashParseFilter.fingerprint("hello world", 3));
+        Assertions.assertNotEquals(
+                SimHashParseFilter.fingerprint("hello world", 1),
+                SimHashParseFilter.fingerprint("world hello", 2));
+    }
+
+    @Test
+    void testDistance() {
+        Assertions.assertEquals(
+                0, SimHashParseFilter.distance("ffffffffffffffff", "ffffffffffffffff"));
+        Assertions.assertEquals(
+                64, SimHashParseFilter.distance("ffffffffffffffff", "0000000000000000"));
+        Assertions.assertEquals(
+                2, SimHashParseFilter.distance("0000000000000003", "0000000000000000"));
+        Assertions.assertEquals(-1, SimHashParseFilter.distance(null, "0000000000000000"));
+        Assertions.assertEquals(
+                -1,
+                SimHashParseFilter.distance(
+                        "d41d8cd98f00b204e9800998ecf8427e", "0000000000000000"));
+    }
+}
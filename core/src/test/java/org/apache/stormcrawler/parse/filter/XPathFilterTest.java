@@ -16,10 +16,16 @@
  */
 package org.apache.stormcrawler.parse.filter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.bolt.JSoupParserBolt;
+import org.apache.stormcrawler.parse.DocumentFragmentBuilder;
+import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.parse.ParsingTester;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -75,4 +81,61 @@ class XPathFilterTest extends ParsingTester {
         String[] scripts = metadata.getValues("streetAddress");
         Assertions.assertNotNull(scripts);
     }
+
+    private Metadata filter(String html, String... expressions) {
+        ObjectNode params = new ObjectMapper().createObjectNode();
+        for (int i = 0; i < expressions.length; i++) {
+            params.put("key" + i, expressions[i]);
+        }
+        XPathFilter filter = new XPathFilter();
+        filter.configure(new HashMap<>(), params);
+        ParseResult parse = new ParseResult();
+        filter.filter(
+                "http://www.digitalpebble.com",
+                null,
+                DocumentFragmentBuilder.fromJsoup(
+                        org.jsoup.parser.Parser.htmlParser().parseInput(html, "")),
+                parse);
+        return parse.get("http://www.digitalpebble.com").getMetadata();
+    }
+
+    @Test
+    void testSingleTraversal() throws IOException {
+        String html = new String(readContent("digitalpebble.com.html"), StandardCharsets.UTF_8);
+        // the first expression of each pair is matched in the common traversal
+        // the second one is equivalent but evaluated by the XPath engine
+        String[] expressions = {
+            "//A/@href",
+            "//A/attribute::href",
+            "//SPAN[@class=\"concept\"]",
+            "//SPAN[@class = \"concept\"]",
+            "//*[@class='concept']",
+            "//*[@class = 'concept']",
+            "//META[@name]/@content",
+            "//META[@name]/attribute::content",
+            "//IMG[@alt]",
+            "//IMG[@alt][true()]"
+        };
+        Metadata metadata = filter(html, expressions);
+        for (int i = 0; i < expressions.length; i += 2) {
+            String[] values = metadata.getValues("key" + i);
+            Assertions.assertNotNull(values, expressions[i]);
+            Assertions.assertArrayEquals(values, metadata.getValues("key" + (i + 1)));
+        }
+    }
+
+    @Test
+    void testPrefixedNames() {
+        // documents with prefixed names are evaluated by the XPath engine only
+        Metadata metadata =
+                filter(
+                        "<html><body><fb:like class='a'>b</fb:like><like class='a'>c</like>"
+                                + "<p xml:lang='en'>d</p></body></html>",
+                        "//LIKE",
+                        "//LIKE/@class",
+                        "//P/@lang");
+        Assertions.assertArrayEquals(new String[] {"c"}, metadata.getValues("key0"));
+        Assertions.assertArrayEquals(new String[] {"a", "a"}, metadata.getValues("key1"));
+        Assertions.assertArrayEquals(new String[] {"en"}, metadata.getValues("key2"));
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.TestUtil;
+import org.apache.stormcrawler.persistence.urlbuffer.SimpleURLBuffer;
+import org.apache.stormcrawler.persistence.urlbuffer.URLBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AbstractQueryingSpoutTest {
+
+    /** Returns 10 new URLs per query as well as the 10 previous ones */
+    private static class TestSpout extends AbstractQueryingSpout {
+
+        final List<Integer> bufferSizeAtQuery = Collections.synchronizedList(new ArrayList<>());
+
+        private int queries = 0;
+
+        @Override
+        protected void populateBuffer() {
+            bufferSizeAtQuery.add(buffer.size());
+            for (int i = Math.max(0, queries - 1) * 10; i < (queries + 1) * 10; i++) {
+                addToBuffer("https://www.example" + (i % 3) + ".com/" + i, new Metadata());
+            }
+            queries++;
+        }
+    }
+
+    @Test
+    void testLowWatermark() throws InterruptedException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(URLBuffer.bufferClassParamName, SimpleURLBuffer.class.getName());
+        conf.put("spout.min.delay.queries", 0);
+        conf.put("spout.buffer.low.watermark", 5);
+
+        final List<Object> emitted = Collections.synchronizedList(new ArrayList<>());
+        SpoutOutputCollector collector = mock(SpoutOutputCollector.class);
+        doAnswer(
+                        invocation -> {
+                            emitted.add(invocation.getArgument(1));
+                            return null;
+                        })
+                .when(collector)
+                .emit(any(List.class), any());
+
+        TestSpout spout = new TestSpout();
+        spout.open(conf, TestUtil.getMockedTopologyContext(), collector);
+        spout.activate();
+
+        for (int i = 0; i < 1000 && emitted.size() < 50; i++) {
+            spout.nextTuple();
+            Thread.sleep(1);
+        }
+        spout.close();
+
+        // the URLs are not emitted twice
+        Assertions.assertEquals(emitted.size(), new HashSet<>(emitted).size());
+        Assertions.assertTrue(emitted.size() >= 50);
+        // queries were sent before the buffer was empty
+        Assertions.assertTrue(
+                spout.bufferSizeAtQuery.stream().skip(1).anyMatch(size -> size > 0),
+                spout.bufferSizeAtQuery.toString());
+    }
+
+    @Test
+    void testEmitBudget() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(URLBuffer.bufferClassParamName, SimpleURLBuffer.class.getName());
+        conf.put("spout.min.delay.queries", 0);
+        conf.put("spout.emit.batch.size", 8);
+        conf.put("topology.max.spout.pending", 6);
+
+        final List<Object> emitted = new ArrayList<>();
+        SpoutOutputCollector collector = mock(SpoutOutputCollector.class);
+        doAnswer(
+                        invocation -> {
+                            emitted.add(invocation.getArgument(1));
+                            return null;
+                        })
+                .when(collector)
+                .emit(any(List.class), any());
+
+        TestSpout spout = new TestSpout();
+        spout.open(conf, TestUtil.getMockedTopologyContext(), collector);
+        spout.activate();
+
+        // the first call populates the buffer with 10 URLs
+        spout.nextTuple();
+        Assertions.assertEquals(0, emitted.size());
+
+        // limited by max spout pending
+        spout.nextTuple();
+        Assertions.assertEquals(6, emitted.size());
+
+        // acking frees some room
+        spout.ack(emitted.get(0));
+        spout.ack(emitted.get(1));
+        spout.ack(emitted.get(2));
+        spout.nextTuple();
+        Assertions.assertEquals(9, emitted.size());
+        spout.close();
+    }
+
+    @Test
+    void testInProcessFingerprints() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(URLBuffer.bufferClassParamName, SimpleURLBuffer.class.getName());
+        conf.put("spout.min.delay.queries", 0);
+        conf.put("spout.emit.batch.size", 10);
+        conf.put("spout.inprocess.fingerprints", true);
+
+        final List<Object> emitted = new ArrayList<>();
+        SpoutOutputCollector collector = mock(SpoutOutputCollector.class);
+        doAnswer(
+                        invocation -> {
+                            emitted.add(invocation.getArgument(1));
+                            return null;
+                        })
+                .when(collector)
+                .emit(any(List.class), any());
+
+        TestSpout spout = new TestSpout();
+        spout.open(conf, TestUtil.getMockedTopologyContext(), collector);
+        spout.activate();
+        Assertions.assertTrue(
+                spout.beingProcessed instanceof AbstractQueryingSpout.FingerprintInProcessMap);
+
+        spout.nextTuple();
+        spout.nextTuple();
+        Assertions.assertEquals(10, emitted.size());
+        Assertions.assertEquals(10, spout.beingProcessed.size());
+
+        spout.ack(emitted.get(0));
+        Assertions.assertEquals(9, spout.beingProcessed.size());
+        Assertions.assertEquals(1, spout.beingProcessed.inCache());
+
+        // neither the URLs being processed nor the ones in the purgatory get added again
+        Assertions.assertFalse(spout.addToBuffer(emitted.get(0).toString(), new Metadata()));
+        Assertions.assertFalse(spout.addToBuffer(emitted.get(1).toString(), new Metadata()));
+        Assertions.assertTrue(spout.addToBuffer("https://www.example.com/new", new Metadata()));
+        spout.close();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.apache.storm.Constants;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Tuple;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.TestOutputCollector;
+import org.apache.stormcrawler.TestUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AbstractStatusUpdaterBoltTest {
+
+    /** Stores the URLs of the batches, rejects the ones containing "reject" */
+    private static class BatchingStatusUpdater extends AbstractStatusUpdaterBolt {
+
+        final List<List<String>> batches = new ArrayList<>();
+
+        boolean failBatch = false;
+
+        @Override
+        protected void store(
+                String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple t) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected boolean supportsBatch() {
+            return true;
+        }
+
+        @Override
+        protected void storeBatch(List<StatusUpdate> updates) throws Exception {
+            if (failBatch) {
+                throw new Exception("Can't store the batch");
+            }
+            batches.add(
+                    updates.stream().map(StatusUpdate::getURL).collect(Collectors.toList()));
+            for (StatusUpdate update : updates) {
+                if (update.getURL().contains("reject")) {
+                    update.fail();
+                }
+            }
+        }
+    }
+
+    private TestOutputCollector output;
+
+    private BatchingStatusUpdater bolt;
+
+    private Map<String, Object> conf;
+
+    @BeforeEach
+    void setUp() {
+        output = new TestOutputCollector();
+        bolt = new BatchingStatusUpdater();
+        conf = new HashMap<>();
+        conf.put("scheduler.class", DefaultScheduler.class.getName());
+        conf.put("status.updater.use.cache", false);
+        conf.put("status.updater.batch.size", 3);
+        conf.put("status.updater.batch.max.age.msec", 60000);
+    }
+
+    private static Tuple getTuple(String url) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("url", url);
+        values.put("status", Status.DISCOVERED);
+        values.put("metadata", new Metadata());
+        return TestUtil.getMockedTestTuple(values);
+    }
+
+    @Test
+    void testBatchSize() {
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+
+        bolt.execute(getTuple("http://a.net/"));
+        bolt.execute(getTuple("http://b.net/"));
+        Assertions.assertTrue(bolt.batches.isEmpty());
+        Assertions.assertTrue(output.getAckedTuples().isEmpty());
+
+        bolt.execute(getTuple("http://c.net/reject"));
+        Assertions.assertEquals(1, bolt.batches.size());
+        Assertions.assertEquals(3, bolt.batches.get(0).size());
+        Assertions.assertEquals(2, output.getAckedTuples().size());
+        Assertions.assertEquals(1, output.getFailedTuples().size());
+
+        // the whole batch fails
+        bolt.failBatch = true;
+        bolt.execute(getTuple("http://d.net/"));
+        bolt.execute(getTuple("http://e.net/"));
+        bolt.execute(getTuple("http://f.net/"));
+        Assertions.assertEquals(2, output.getAckedTuples().size());
+        Assertions.assertEquals(4, output.getFailedTuples().size());
+    }
+
+    @Test
+    void testBatchAge() throws InterruptedException {
+        conf.put("status.updater.batch.max.age.msec", 1);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+
+        Tuple tick = mock(Tuple.class);
+        when(tick.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+        when(tick.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+
+        bolt.execute(getTuple("http://a.net/"));
+        Thread.sleep(10);
+        bolt.execute(tick);
+        Assertions.assertEquals(1, bolt.batches.size());
+        // the URL and the tick tuple
+        Assertions.assertEquals(2, output.getAckedTuples().size());
+    }
+
+    @Test
+    void testBatchNotSupported() {
+        AbstractStatusUpdaterBolt memory = new MemoryStatusUpdater();
+        memory.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        memory.execute(getTuple("http://a.net/"));
+        Assertions.assertEquals(1, output.getAckedTuples().size());
+    }
+
+    @Test
+    void testTickIfBatchSupported() {
+        Assertions.assertTrue(
+                bolt.getComponentConfiguration()
+                        .containsKey(org.apache.storm.Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+        Assertions.assertFalse(
+                new MemoryStatusUpdater()
+                        .getComponentConfiguration()
+                        .containsKey(org.apache.storm.Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+
+        // batches not enabled, the tick is just acked
+        conf.put("status.updater.batch.size", 1);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        Tuple tick = mock(Tuple.class);
+        when(tick.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+        when(tick.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+        bolt.execute(tick);
+        Assertions.assertTrue(bolt.batches.isEmpty());
+        Assertions.assertEquals(1, output.getAckedTuples().size());
+    }
+}
@@ -155,4 +155,32 @@ class AdaptiveSchedulerTest {
                         .toInstant();
         Assertions.assertTrue(lastFetch.until(lastModifiedTime, ChronoUnit.SECONDS) <= 1);
     }
+
+    @Test
+    void testNearDuplicateSignature() {
+        Map<String, Object> conf = getConf();
+        conf.put(AdaptiveScheduler.SIGNATURE_MAX_DISTANCE, 3);
+        Scheduler scheduler = new AdaptiveScheduler();
+        scheduler.init(conf);
+        Metadata metadata = new Metadata();
+        metadata.setValue("fetch.statusCode", "200");
+        metadata.setValue(AdaptiveScheduler.FETCH_INTERVAL_KEY, "5");
+        /* SimHash fingerprints differing by 2 bits - unchanged */
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, "00000000000000ff");
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, "00000000000000fc");
+        scheduler.schedule(Status.FETCHED, metadata);
+        int fi1 = Integer.parseInt(metadata.getFirstValue(AdaptiveScheduler.FETCH_INTERVAL_KEY));
+        Assertions.assertTrue(5 < fi1);
+        /* differing by 8 bits - changed */
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, "0000000000000000");
+        scheduler.schedule(Status.FETCHED, metadata);
+        int fi2 = Integer.parseInt(metadata.getFirstValue(AdaptiveScheduler.FETCH_INTERVAL_KEY));
+        Assertions.assertTrue(fi1 > fi2);
+        /* MD5 signatures still compared strictly */
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, md5sumSpaceContent);
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, md5sumEmptyContent);
+        scheduler.schedule(Status.FETCHED, metadata);
+        int fi3 = Integer.parseInt(metadata.getFirstValue(AdaptiveScheduler.FETCH_INTERVAL_KEY));
+        Assertions.assertTrue(fi2 > fi3);
+    }
 }
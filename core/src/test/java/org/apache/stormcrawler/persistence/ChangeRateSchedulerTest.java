@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class ChangeRateSchedulerTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeRateSchedulerTest.class);
+
+    private static final long MINUTE = 60_000L;
+
+    private static final long DAY = 1440 * MINUTE;
+
+    private static ChangeRateScheduler getScheduler(Map<String, Object> conf) {
+        ChangeRateScheduler scheduler = new ChangeRateScheduler();
+        scheduler.init(conf);
+        return scheduler;
+    }
+
+    /** Fetches a page with the given signature at the given time */
+    private static long fetch(
+            ChangeRateScheduler scheduler, Metadata metadata, String signature, long now) {
+        String old = metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_KEY);
+        if (old != null) {
+            metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, old);
+        }
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, signature);
+        metadata.setValue("fetch.statusCode", "200");
+        Optional<Date> next = scheduler.schedule(Status.FETCHED, metadata, now);
+        return next.get().getTime();
+    }
+
+    @Test
+    void testSolveFreshness() {
+        double x = ChangeRateScheduler.solveFreshness(0.8);
+        Assertions.assertEquals(0.8, (1 - Math.exp(-x)) / x, 1e-9);
+        x = ChangeRateScheduler.solveMarginalGain(0.5);
+        Assertions.assertEquals(0.5, 1 - (1 + x) * Math.exp(-x), 1e-9);
+    }
+
+    @Test
+    void testFirstFetch() {
+        ChangeRateScheduler scheduler = getScheduler(new HashMap<>());
+        Metadata metadata = new Metadata();
+        long now = 1_000_000_000_000L;
+        long next = fetch(scheduler, metadata, "a", now);
+        // about the default interval
+        long interval = (next - now) / MINUTE;
+        Assertions.assertTrue(interval > 1000 && interval < 2000, Long.toString(interval));
+        Assertions.assertNotNull(metadata.getFirstValue(ChangeRateScheduler.CHANGE_RATE_KEY));
+    }
+
+    @Test
+    void testStaticAndChangingPages() {
+        // freshness target only
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(ChangeRateScheduler.MIN_FRESH_MINUTES, 0);
+        ChangeRateScheduler scheduler = getScheduler(conf);
+        long start = 1_000_000_000_000L;
+
+        Metadata unchanged = new Metadata();
+        long now = start;
+        for (int i = 0; i < 20; i++) {
+            now = fetch(scheduler, unchanged, "a", now);
+        }
+        // reaches the max interval of two weeks
+        long next = fetch(scheduler, unchanged, "a", now);
+        Assertions.assertEquals(14 * DAY, next - now);
+
+        Metadata changing = new Metadata();
+        now = start;
+        for (int i = 0; i < 20; i++) {
+            now = fetch(scheduler, changing, Integer.toString(i), now);
+        }
+        // goes down to the min interval of one hour
+        next = fetch(scheduler, changing, "changed", now);
+        Assertions.assertEquals(60 * MINUTE, next - now);
+    }
+
+    @Test
+    void testErrorResetsHistory() {
+        ChangeRateScheduler scheduler = getScheduler(new HashMap<>());
+        Metadata metadata = new Metadata();
+        fetch(scheduler, metadata, "a", 1_000_000_000_000L);
+        scheduler.schedule(Status.ERROR, metadata, 1_000_000_000_000L);
+        Assertions.assertNull(metadata.getFirstValue(ChangeRateScheduler.CHANGE_RATE_KEY));
+        Assertions.assertNull(metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_KEY));
+    }
+
+    /**
+     * Simulates pages changing as Poisson processes, some never, and compares the fetches wasted
+     * on unchanged pages and the share of the time the pages are stale with the AdaptiveScheduler
+     */
+    @Test
+    void testSimulation() {
+        int numPages = 500;
+        long horizon = 180 * DAY;
+        Random random = new Random(0);
+
+        // times at which each page changes
+        long[][] changes = new long[numPages][];
+        for (int p = 0; p < numPages; p++) {
+            if (p % 5 == 0) {
+                changes[p] = new long[0];
+                continue;
+            }
+            // mean time between changes from 2 hours to 60 days, log-uniform
+            double meanMinutes = Math.exp(Math.log(120) + random.nextDouble() * Math.log(720));
+            long[] times = new long[16];
+            int n = 0;
+            long t = 0;
+            while (true) {
+                t += (long) (-Math.log(1 - random.nextDouble()) * meanMinutes * MINUTE);
+                if (t >= horizon) {
+                    break;
+                }
+                if (n == times.length) {
+                    times = Arrays.copyOf(times, n * 2);
+                }
+                times[n++] = t;
+            }
+            changes[p] = Arrays.copyOf(times, n);
+        }
+
+        Map<String, Object> conf = new HashMap<>();
+        AdaptiveScheduler adaptive = new AdaptiveScheduler();
+        adaptive.init(conf);
+        ChangeRateScheduler changeRate = new ChangeRateScheduler();
+        changeRate.init(conf);
+
+        double[] adaptiveResults = simulate(adaptive, changes, horizon);
+        double[] changeRateResults = simulate(changeRate, changes, horizon);
+
+        LOG.info(
+                "AdaptiveScheduler: {} fetches, {} wasted, {}% stale",
+                (long) adaptiveResults[0],
+                (long) adaptiveResults[1],
+                String.format(Locale.ROOT, "%.1f", adaptiveResults[2] * 100));
+        LOG.info(
+                "ChangeRateScheduler: {} fetches, {} wasted, {}% stale",
+                (long) changeRateResults[0],
+                (long) changeRateResults[1],
+                String.format(Locale.ROOT, "%.1f", changeRateResults[2] * 100));
+
+        // fewer fetches, fewer of unchanged pages, without the pages being more often stale
+        Assertions.assertTrue(changeRateResults[0] < adaptiveResults[0]);
+        Assertions.assertTrue(changeRateResults[1] < adaptiveResults[1]);
+        Assertions.assertTrue(changeRateResults[2] <= adaptiveResults[2]);
+    }
+
+    /** Returns the number of fetches, of wasted fetches and the share of the time stale */
+    private static double[] simulate(Scheduler scheduler, long[][] changes, long horizon) {
+        long start = 1_000_000_000_000L;
+        long fetches = 0;
+        long wasted = 0;
+        long staleTime = 0;
+        for (long[] pageChanges : changes) {
+            Metadata metadata = new Metadata();
+            long t = 0;
+            int version = 0;
+            while (t < horizon) {
+                int newVersion = version;
+                while (newVersion < pageChanges.length && pageChanges[newVersion] <= t) {
+                    newVersion++;
+                }
+                if (t > 0 && newVersion == version) {
+                    wasted++;
+                }
+                version = newVersion;
+                fetches++;
+
+                String old = metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_KEY);
+                if (old != null) {
+                    metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, old);
+                }
+                metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, Integer.toString(version));
+                metadata.setValue("fetch.statusCode", "200");
+
+                long interval;
+                if (scheduler instanceof ChangeRateScheduler) {
+                    long next =
+                            ((ChangeRateScheduler) scheduler)
+                                    .schedule(Status.FETCHED, metadata, start + t)
+                                    .get()
+                                    .getTime();
+                    interval = next - (start + t);
+                } else {
+                    // relative to the current time
+                    long now = System.currentTimeMillis();
+                    long next = scheduler.schedule(Status.FETCHED, metadata).get().getTime();
+                    interval = Math.round((next - now) / (double) MINUTE) * MINUTE;
+                }
+
+                long nextFetch = Math.min(t + interval, horizon);
+                // stale from the first change after the fetch until the next one
+                if (version < pageChanges.length && pageChanges[version] < nextFetch) {
+                    staleTime += nextFetch - pageChanges[version];
+                }
+                t = t + interval;
+            }
+        }
+        return new double[] {fetches, wasted, staleTime / (double) (changes.length * horizon)};
+    }
+}
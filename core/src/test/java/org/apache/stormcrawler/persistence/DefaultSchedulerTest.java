@@ -70,6 +70,25 @@ class DefaultSchedulerTest {
                 DateUtils.round(nextFetch.get(), Calendar.SECOND));
     }
 
+    @Test
+    void testCustomWithSeveralValues() throws MalformedURLException {
+        Map<String, Object> stormConf = new HashMap<>();
+        stormConf.put("fetchInterval.FETCHED.testKey=someValue", 360);
+        stormConf.put("fetchInterval.FETCH_ERROR.testKey=otherValue", 60);
+        DefaultScheduler scheduler = new DefaultScheduler();
+        scheduler.init(stormConf);
+        Metadata metadata = new Metadata();
+        metadata.addValue("testKey", "unknown");
+        metadata.addValue("testKey", "someValue");
+        Assertions.assertEquals(
+                Optional.of(360), scheduler.checkCustomInterval(metadata, Status.FETCHED));
+        // matching rule without a value for the status
+        Assertions.assertEquals(
+                Optional.empty(), scheduler.checkCustomInterval(metadata, Status.FETCH_ERROR));
+        Assertions.assertEquals(
+                Optional.empty(), scheduler.checkCustomInterval(new Metadata(), Status.FETCHED));
+    }
+
     @Test
     void testBadConfig() throws MalformedURLException {
         Map<String, Object> stormConf = new HashMap<>();
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FingerprintCacheTest {
+
+    @Test
+    void testContains() {
+        FingerprintCache cache = new FingerprintCache(0, 1, TimeUnit.HOURS);
+        Assertions.assertFalse(cache.contains("https://www.example.com/"));
+        cache.put("https://www.example.com/");
+        Assertions.assertTrue(cache.contains("https://www.example.com/"));
+        Assertions.assertFalse(cache.contains("https://www.example.com/other"));
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertTrue(cache.falsePositiveProbability() > 0);
+    }
+
+    @Test
+    void testExpiry() {
+        FingerprintCache cache = new FingerprintCache(0, 10, TimeUnit.SECONDS);
+        long start = System.currentTimeMillis();
+        cache.put(42, start);
+        cache.put(43, start);
+        // in the previous generation, gets copied to the current one
+        Assertions.assertTrue(cache.contains(42, start + 15000));
+        // 43 has not been looked up since
+        Assertions.assertTrue(cache.contains(42, start + 26000));
+        Assertions.assertFalse(cache.contains(43, start + 26000));
+        // neither added nor looked up for more than two TTLs
+        Assertions.assertFalse(cache.contains(42, start + 50000));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testMaxSize() {
+        // smallest size, 768 entries per generation
+        FingerprintCache cache = new FingerprintCache(0, 1, TimeUnit.HOURS);
+        long now = System.currentTimeMillis();
+        for (long fp = 2; fp < 2002; fp++) {
+            cache.put(fp, now);
+        }
+        Assertions.assertTrue(cache.size() <= 1536);
+        Assertions.assertFalse(cache.contains(2, now));
+        for (long fp = 2002 - 768; fp < 2002; fp++) {
+            Assertions.assertTrue(cache.contains(fp, now), Long.toString(fp));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class InProcessFingerprintsTest {
+
+    @Test
+    void testInProcessAndPurgatory() {
+        InProcessFingerprints fingerprints = new InProcessFingerprints(30, TimeUnit.SECONDS);
+        long fp = InProcessFingerprints.fingerprint("https://www.example.com/");
+
+        Assertions.assertFalse(fingerprints.contains(fp, 0));
+        fingerprints.add(fp);
+        Assertions.assertTrue(fingerprints.contains(fp, 0));
+        Assertions.assertEquals(1, fingerprints.size());
+
+        Assertions.assertTrue(fingerprints.remove(fp, 1000));
+        Assertions.assertEquals(0, fingerprints.size());
+        Assertions.assertEquals(1, fingerprints.inPurgatory());
+        // still in the purgatory
+        Assertions.assertTrue(fingerprints.contains(fp, 30999));
+        // expired
+        Assertions.assertFalse(fingerprints.contains(fp, 31000));
+        Assertions.assertEquals(0, fingerprints.inPurgatory());
+    }
+
+    @Test
+    void testPurgatoryRenewed() {
+        InProcessFingerprints fingerprints = new InProcessFingerprints(10, TimeUnit.SECONDS);
+        fingerprints.add(42);
+        fingerprints.remove(42, 0);
+        fingerprints.add(42);
+        fingerprints.remove(42, 5000);
+        // the first expiry does not remove it
+        Assertions.assertTrue(fingerprints.contains(42, 12000));
+        Assertions.assertFalse(fingerprints.contains(42, 15000));
+    }
+
+    @Test
+    void testCollisions() {
+        InProcessFingerprints fingerprints = new InProcessFingerprints(0, TimeUnit.SECONDS);
+        // two URLs with the same fingerprint being processed
+        fingerprints.add(42);
+        fingerprints.add(42);
+        Assertions.assertEquals(1, fingerprints.size());
+        Assertions.assertTrue(fingerprints.remove(42, 0));
+        // still there until the second one is removed
+        Assertions.assertTrue(fingerprints.contains(42, 0));
+        Assertions.assertTrue(fingerprints.remove(42, 0));
+        Assertions.assertFalse(fingerprints.contains(42, 0));
+        Assertions.assertFalse(fingerprints.remove(42, 0));
+
+        // 0 is stored as 1
+        fingerprints.add(0);
+        Assertions.assertTrue(fingerprints.contains(1, 0));
+        fingerprints.remove(1, 0);
+        Assertions.assertFalse(fingerprints.contains(0, 0));
+    }
+
+    @Test
+    void testManyEntries() {
+        InProcessFingerprints fingerprints = new InProcessFingerprints(1, TimeUnit.SECONDS);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 200000; i++) {
+            // small range to get lots of removals, without 0 and 1 which are the same
+            long fp = (random.nextInt(25000) + 2) * (random.nextBoolean() ? 1 : -1);
+            if (random.nextBoolean()) {
+                if (expected.add(fp)) {
+                    fingerprints.add(fp);
+                }
+            } else if (expected.remove(fp)) {
+                Assertions.assertTrue(fingerprints.remove(fp, 0));
+            }
+        }
+        Assertions.assertEquals(expected.size(), fingerprints.size());
+        // past the purgatory
+        for (long fp = -25002; fp <= 25002; fp++) {
+            Assertions.assertEquals(
+                    expected.contains(fp), fingerprints.contains(fp, 2000), Long.toString(fp));
+        }
+        Assertions.assertEquals(0, fingerprints.inPurgatory());
+    }
+}
@@ -17,6 +17,8 @@
 package org.apache.stormcrawler.persistence;
 
 import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.Set;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.persistence.urlbuffer.PriorityURLBuffer;
 import org.apache.stormcrawler.persistence.urlbuffer.SimpleURLBuffer;
@@ -70,4 +72,35 @@ class URLBufferTest {
         Assertions.assertEquals("http://a.net/test2.html", buffer.next().get(0));
         Assertions.assertFalse(buffer.hasNext());
     }
+
+    @Test
+    void testConcurrentAdds() throws InterruptedException {
+        URLBuffer buffer = new SimpleURLBuffer();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] =
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 10000; i++) {
+                                    buffer.add(
+                                            "http://" + (i % 100) + ".net/" + (i * 4 + offset),
+                                            new Metadata());
+                                }
+                            });
+            threads[t].start();
+        }
+        Set<Object> received = new HashSet<>();
+        while (received.size() < 40000) {
+            if (buffer.hasNext()) {
+                Assertions.assertTrue(received.add(buffer.next().get(0)));
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertEquals(0, buffer.size());
+        Assertions.assertEquals(0, buffer.numQueues());
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence.urlbuffer;
+
+import java.util.HashMap;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SchedulingURLBufferTest {
+
+    @Test
+    void testQueueNotReady() throws InterruptedException {
+        SchedulingURLBuffer buffer = new SchedulingURLBuffer();
+        buffer.configure(new HashMap<>());
+        buffer.add("http://a.net/test.html", new Metadata());
+        buffer.add("http://a.net/test2.html", new Metadata());
+        buffer.add("http://b.net/test.html", new Metadata());
+        buffer.add("http://b.net/test2.html", new Metadata());
+
+        Assertions.assertEquals("http://a.net/test.html", buffer.next().get(0));
+
+        // URLs from a.net took an hour to be processed
+        for (int i = 0; i < 5; i++) {
+            buffer.addTiming(3600000, "a.net");
+        }
+
+        Assertions.assertEquals("http://b.net/test.html", buffer.next().get(0));
+        Assertions.assertEquals("http://b.net/test2.html", buffer.next().get(0));
+        // a.net is not ready yet
+        Assertions.assertNull(buffer.next());
+        Assertions.assertTrue(buffer.hasNext());
+        Assertions.assertEquals(1, buffer.size());
+        Assertions.assertEquals(1, buffer.numQueues());
+
+        // now it is
+        for (int i = 0; i < 5; i++) {
+            buffer.addTiming(0, "a.net");
+        }
+        Thread.sleep(10);
+        Assertions.assertEquals("http://a.net/test2.html", buffer.next().get(0));
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertEquals(0, buffer.numQueues());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence.urlbuffer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpillingURLBufferTest {
+
+    @TempDir Path spillDir;
+
+    private List<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testSpilling() throws IOException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(SpillingURLBuffer.MAX_IN_MEMORY_PARAM, 2);
+        conf.put(SpillingURLBuffer.SPILL_DIR_PARAM, spillDir.toString());
+
+        SpillingURLBuffer buffer = new SpillingURLBuffer();
+        buffer.configure(conf);
+        SimpleURLBuffer reference = new SimpleURLBuffer();
+
+        for (int i = 0; i < 5; i++) {
+            for (String host : new String[] {"a", "b"}) {
+                String url = "http://" + host + ".net/" + i;
+                Metadata md = new Metadata();
+                md.setValue("index", Integer.toString(i));
+                Assertions.assertTrue(buffer.add(url, md));
+                reference.add(url, md);
+            }
+        }
+
+        Assertions.assertEquals(10, buffer.size());
+        Assertions.assertEquals(2, buffer.numQueues());
+        Assertions.assertEquals(6, buffer.numSpilled());
+        Assertions.assertEquals(1, spillFiles().size());
+
+        // already in the buffer, in memory or on disk
+        Assertions.assertFalse(buffer.add("http://a.net/0", new Metadata()));
+        Assertions.assertFalse(buffer.add("http://a.net/4", new Metadata()));
+
+        // same order and metadata as without spilling
+        while (reference.hasNext()) {
+            List<Object> expected = reference.next();
+            List<Object> actual = buffer.next();
+            Assertions.assertEquals(expected.get(0), actual.get(0));
+            Assertions.assertEquals(
+                    ((Metadata) expected.get(1)).getFirstValue("index"),
+                    ((Metadata) actual.get(1)).getFirstValue("index"));
+        }
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertNull(buffer.next());
+        Assertions.assertEquals(0, buffer.numSpilled());
+        // truncated once everything has been read back
+        Assertions.assertEquals(0, Files.size(spillFiles().get(0)));
+
+        // can be added again
+        Assertions.assertTrue(buffer.add("http://a.net/4", new Metadata()));
+
+        buffer.close();
+        Assertions.assertTrue(spillFiles().isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DocumentIDGeneratorTest {
+
+    private static final String URL = "https://stormcrawler.apache.org/";
+
+    private static String hex(long[] hash) {
+        return String.format(Locale.ROOT, "%016x %016x", hash[0], hash[1]);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testMurmurHash3ReferenceValues() {
+        // values from the reference implementation
+        Assertions.assertEquals(
+                "0000000000000000 0000000000000000", hex(MurmurHash3.hash128(new byte[0])));
+        Assertions.assertEquals(
+                "cbd8a7b341bd9b02 5b1e906a48ae1d19", hex(MurmurHash3.hash128(bytes("hello"))));
+        Assertions.assertEquals(
+                "e34bbc7bbc071b6c 7a433ca9c49a9347",
+                hex(MurmurHash3.hash128(bytes("The quick brown fox jumps over the lazy dog"))));
+    }
+
+    @Test
+    void testDefault() {
+        DocumentIDGenerator generator = DocumentIDGenerator.getInstance(new HashMap<>(), "indexer");
+        Assertions.assertTrue(generator instanceof SHA256DocumentIDGenerator);
+        Assertions.assertEquals(DigestUtils.sha256Hex(URL), generator.getID(new Metadata(), URL));
+    }
+
+    @Test
+    void testMurmur3() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(
+                DocumentIDGenerator.documentIDClassParamName,
+                Murmur3DocumentIDGenerator.class.getName());
+        DocumentIDGenerator generator = DocumentIDGenerator.getInstance(conf, "indexer");
+        String id = generator.getID(new Metadata(), URL);
+        Assertions.assertTrue(id.matches("[A-Za-z0-9_-]{22}"), id);
+        Assertions.assertEquals(id, generator.getID(null, URL));
+        Assertions.assertNotEquals(id, generator.getID(null, URL + "index.html"));
+    }
+
+    @Test
+    void testPrefix() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(
+                "status.updater." + DocumentIDGenerator.documentIDClassParamName,
+                Murmur3DocumentIDGenerator.class.getName());
+        Assertions.assertTrue(
+                DocumentIDGenerator.getInstance(conf, "status.updater")
+                        instanceof Murmur3DocumentIDGenerator);
+        Assertions.assertTrue(
+                DocumentIDGenerator.getInstance(conf, "indexer")
+                        instanceof SHA256DocumentIDGenerator);
+    }
+
+    @Test
+    void testMetadataKey() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(
+                DocumentIDGenerator.documentIDClassParamName,
+                Murmur3DocumentIDGenerator.class.getName());
+        conf.put("status.updater." + DocumentIDGenerator.documentIDMetadataKeyParamName, "docid");
+        DocumentIDGenerator generator = DocumentIDGenerator.getInstance(conf, "status.updater");
+        Metadata metadata = new Metadata();
+        metadata.setValue("docid", DigestUtils.sha256Hex(URL));
+        Assertions.assertEquals(DigestUtils.sha256Hex(URL), generator.getID(metadata, URL));
+        Assertions.assertEquals(22, generator.getID(new Metadata(), URL).length());
+    }
+
+    @Test
+    void testMetadataKeyPerComponent() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(
+                "status.updater." + DocumentIDGenerator.documentIDClassParamName,
+                Murmur3DocumentIDGenerator.class.getName());
+        conf.put("status.updater." + DocumentIDGenerator.documentIDMetadataKeyParamName, "docid");
+        // not used without a prefix either
+        conf.put(DocumentIDGenerator.documentIDMetadataKeyParamName, "docid");
+        // ID of the document in the status index, passed on with the metadata
+        Metadata metadata = new Metadata();
+        metadata.setValue("docid", "status-id");
+        DocumentIDGenerator indexer = DocumentIDGenerator.getInstance(conf, "indexer");
+        Assertions.assertEquals(DigestUtils.sha256Hex(URL), indexer.getID(metadata, URL));
+        DocumentIDGenerator status = DocumentIDGenerator.getInstance(conf, "status.updater");
+        Assertions.assertEquals("status-id", status.getID(metadata, URL));
+    }
+}
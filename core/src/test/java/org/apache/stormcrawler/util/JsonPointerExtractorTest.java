@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class JsonPointerExtractorTest {
+
+    private static final String[] POINTERS = {
+        "", "/name", "/@type", "/offers", "/offers/0/price", "/offers/1/price", "/offers/01",
+        "/author/name", "/ratings/count", "/ratings/value", "/big", "/nothing", "/name/first"
+    };
+
+    private static void assertSameAsTree(String json) throws IOException {
+        List<JsonPointer> pointers = new ArrayList<>();
+        for (String p : POINTERS) {
+            pointers.add(JsonPointer.compile(p));
+        }
+        String[] values = new JsonPointerExtractor(pointers).extract(json);
+        JsonNode tree = new ObjectMapper().readTree(json);
+        for (int i = 0; i < POINTERS.length; i++) {
+            JsonNode match = tree.at(pointers.get(i));
+            String expected = match.isMissingNode() ? null : match.asText();
+            Assertions.assertEquals(expected, values[i], POINTERS[i]);
+        }
+    }
+
+    @Test
+    void testSameAsTree() throws IOException {
+        assertSameAsTree(
+                "{\"@type\":\"Product\",\"name\":\"Shoe\",\"offers\":[{\"price\":12.50},"
+                        + "{\"price\":-7,\"currency\":\"EUR\"}],\"author\":{\"name\":null},"
+                        + "\"ratings\":{\"count\":12345678901,\"value\":true},"
+                        + "\"big\":123456789012345678901234567890,\"skip\":{\"a\":[1,2,{}]}}");
+        assertSameAsTree("[{\"name\":\"first\"}]");
+        assertSameAsTree("\"just a string\"");
+    }
+
+    @Test
+    void testDuplicateProperties() throws IOException {
+        // the last value wins
+        assertSameAsTree("{\"name\":\"a\",\"name\":\"b\"}");
+        assertSameAsTree("{\"author\":{\"name\":\"a\"},\"author\":{\"id\":1}}");
+        assertSameAsTree("{\"name\":{\"first\":\"a\"},\"name\":\"b\"}");
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        List<JsonPointer> pointers = new ArrayList<>();
+        pointers.add(JsonPointer.compile("/name"));
+        Assertions.assertNull(new JsonPointerExtractor(pointers).extract("  "));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MimeTypeIdentificationTest {
+
+    private final Detector detector = TikaConfig.getDefaultConfig().getDetector();
+
+    @Test
+    void testSameAsTika() throws IOException {
+        final String[][] cases = {
+            {"text/html; charset=UTF-8", "<!DOCTYPE html><html><body>x</body></html>"},
+            {"text/html", "  \n<html lang='en'><body>x</body></html>"},
+            {"text/html", "\uFEFF<!doctype html>\n<html></html>"},
+            {"TEXT/HTML;charset=iso-8859-1", "<HTML>\n<BODY>x</BODY></HTML>"},
+            {"application/pdf", "%PDF-1.4 ..."}
+        };
+        for (String[] c : cases) {
+            byte[] content = c[1].getBytes(StandardCharsets.UTF_8);
+            String fast = MimeTypeIdentification.getMimeTypeFast(c[0], content);
+            Assertions.assertNotNull(fast, c[1]);
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.CONTENT_TYPE, c[0]);
+            try (InputStream stream = new ByteArrayInputStream(content)) {
+                Assertions.assertEquals(detector.detect(stream, metadata).toString(), fast);
+            }
+        }
+    }
+
+    @Test
+    void testAmbiguous() {
+        final String[][] cases = {
+            {null, "<!DOCTYPE html><html></html>"},
+            {"text/plain", "<!DOCTYPE html><html></html>"},
+            {"text/html", "<?xml version=\"1.0\"?><html></html>"},
+            {"text/html", "<!-- comment --><html></html>"},
+            {"text/html", "<htmlfoo>"},
+            {"text/html", "%PDF-1.4 ..."},
+            {"application/pdf", "<html></html>"},
+            {"application/xhtml+xml", "<html></html>"}
+        };
+        for (String[] c : cases) {
+            byte[] content = c[1].getBytes(StandardCharsets.UTF_8);
+            Assertions.assertNull(MimeTypeIdentification.getMimeTypeFast(c[0], content), c[1]);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.stormcrawler.parse.filter.MD5SignatureParseFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class XXHash64Test {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testReferenceValues() {
+        // values from the reference implementation
+        Assertions.assertEquals("ef46db3751d8e999", XXHash64.hashHex(new byte[0]));
+        Assertions.assertEquals("44bc2cf5ad770999", XXHash64.hashHex(bytes("abc")));
+        Assertions.assertEquals(
+                "0b242d361fda71bc",
+                XXHash64.hashHex(bytes("The quick brown fox jumps over the lazy dog")));
+    }
+
+    @Test
+    void testOffset() {
+        byte[] data = bytes("__The quick brown fox jumps over the lazy dog__");
+        Assertions.assertEquals(
+                XXHash64.hash(bytes("The quick brown fox jumps over the lazy dog")),
+                XXHash64.hash(data, 2, data.length - 4, 0L));
+    }
+
+    @Test
+    void testSignature() {
+        Assertions.assertEquals(
+                "d41d8cd98f00b204e9800998ecf8427e",
+                MD5SignatureParseFilter.hash("md5", new byte[0]));
+        Assertions.assertEquals(
+                "ef46db3751d8e999", MD5SignatureParseFilter.hash("xxhash64", new byte[0]));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> MD5SignatureParseFilter.hash("crc32", new byte[0]));
+    }
+}
@@ -17,6 +17,8 @@
 package org.apache.stormcrawler.parse.filter;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.optimaize.langdetect.DetectedLanguage;
 import com.optimaize.langdetect.LanguageDetector;
 import com.optimaize.langdetect.LanguageDetectorBuilder;
@@ -29,13 +31,24 @@ import com.optimaize.langdetect.text.TextObjectFactory;
 import com.optimaize.langdetect.text.TextObjectFactoryBuilder;
 import com.optimaize.langdetect.text.UrlTextFilter;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import org.apache.commons.lang.StringUtils;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.protocol.HttpHeaders;
+import org.apache.stormcrawler.protocol.ProtocolResponse;
+import org.apache.stormcrawler.util.ConfUtils;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DocumentFragment;
@@ -50,6 +63,18 @@ import org.w3c.dom.DocumentFragment;
  * <p>in the parse filter config. Any value found in the metadata under the key specified by
  * _extracted_ will be normalised and stored in the metadata, otherwise the languages above the
  * probability will be used.
+ *
+ * <p>The parameter _fastPath_ (false by default) activates a cheaper detection. The candidate
+ * languages are those declared by the page (_extracted_ key or Content-Language HTTP header), the
+ * ones detected for the last _hostHistory_ pages of the same host and the _contrastLanguages_. The
+ * first _sampleLength_ characters of the text are scored against these profiles only and the
+ * result is kept if the top language has a probability of at least _minProb_ and is either declared
+ * or among the recent languages of the host. The full detection is done otherwise, or if there are
+ * no declared languages and fewer than _hostHistory_ pages seen for the host. With the fast path,
+ * the declared values are verified instead of being trusted.
+ *
+ * <p>```json "params": { "fastPath": true, "sampleLength": 1000, "hostHistory": 20,
+ * "contrastLanguages": ["en", "es", "fr", "de", "ru", "zh", "ja", "ar"] } ```
  */
 public class LanguageID extends ParseFilter {
 
@@ -70,10 +95,32 @@ public class LanguageID extends ParseFilter {
     private float minProb = 0.999f;
     private String extractedKeyName = "parse.lang";
 
+    /** Profiles of the built-in languages by their language code */
+    private static final Map<String, List<LanguageProfile>> profilesByLanguage = new HashMap<>();
+
+    private boolean fastPath = false;
+    private int sampleLength = 1000;
+    private int hostHistory = 20;
+    private List<String> contrastLanguages =
+            Arrays.asList("en", "es", "fr", "de", "ru", "zh", "ja", "ar");
+    private String protocolMDprefix = "";
+
+    /** Detectors restricted to a set of languages, keyed by the sorted language codes */
+    private Cache<String, LanguageDetector> narrowedDetectors;
+
+    /** Languages detected for the most recent pages of a host */
+    private Cache<String, ArrayDeque<String>> hostLanguages;
+
     static {
         try {
             // load all languages:
             List<LanguageProfile> languageProfiles = new LanguageProfileReader().readAllBuiltIn();
+            for (LanguageProfile profile : languageProfiles) {
+                profilesByLanguage
+                        .computeIfAbsent(
+                                profile.getLocale().getLanguage(), k -> new ArrayList<>())
+                        .add(profile);
+            }
             // build language detector:
             languageDetector =
                     LanguageDetectorBuilder.create(NgramExtractors.standard())
@@ -98,11 +145,39 @@ public class LanguageID extends ParseFilter {
         if (node != null && node.isTextual()) {
             extractedKeyName = node.asText("parse.lang");
         }
+        node = filterParams.get("fastPath");
+        if (node != null) {
+            fastPath = node.asBoolean(false);
+        }
+        node = filterParams.get("sampleLength");
+        if (node != null && node.isNumber()) {
+            sampleLength = node.intValue();
+        }
+        node = filterParams.get("hostHistory");
+        if (node != null && node.isNumber()) {
+            hostHistory = Math.max(1, node.intValue());
+        }
+        node = filterParams.get("contrastLanguages");
+        if (node != null && node.isArray()) {
+            contrastLanguages = new ArrayList<>();
+            node.forEach(n -> contrastLanguages.add(n.asText()));
+        }
+        if (fastPath) {
+            protocolMDprefix =
+                    ConfUtils.getString(stormConf, ProtocolResponse.PROTOCOL_MD_PREFIX_PARAM, "");
+            narrowedDetectors = Caffeine.newBuilder().maximumSize(100).build();
+            hostLanguages = Caffeine.newBuilder().maximumSize(10000).build();
+        }
     }
 
     @Override
     public void filter(String url, byte[] content, DocumentFragment doc, ParseResult parse) {
 
+        if (fastPath) {
+            filterFast(url, parse);
+            return;
+        }
+
         // check whether the metadata already contains a lang value
         // in which case we normalise its value and use it
         Metadata m = parse.get(url).getMetadata();
@@ -137,4 +212,134 @@ public class LanguageID extends ParseFilter {
             }
         }
     }
+
+    private void filterFast(String url, ParseResult parse) {
+        Metadata m = parse.get(url).getMetadata();
+        String text = parse.get(url).getText();
+        if (StringUtils.isBlank(text)) {
+            return;
+        }
+
+        // languages declared by the page or the server
+        Set<String> declared = new TreeSet<>();
+        addDeclared(declared, m.getFirstValue(extractedKeyName));
+        String contentLanguage =
+                m.getFirstValue(HttpHeaders.CONTENT_LANGUAGE, protocolMDprefix);
+        if (contentLanguage != null) {
+            for (String value : contentLanguage.split(",")) {
+                addDeclared(declared, value);
+            }
+        }
+
+        String host = getHost(url);
+        Set<String> recent = new TreeSet<>();
+        boolean enoughHistory = false;
+        if (host != null) {
+            ArrayDeque<String> history = hostLanguages.getIfPresent(host);
+            if (history != null) {
+                synchronized (history) {
+                    recent.addAll(history);
+                    enoughHistory = history.size() >= hostHistory;
+                }
+            }
+        }
+
+        List<DetectedLanguage> probs = null;
+        if (!declared.isEmpty() || enoughHistory) {
+            Set<String> candidates = new TreeSet<>(declared);
+            candidates.addAll(recent);
+            candidates.addAll(contrastLanguages);
+            String sample = text.length() > sampleLength ? text.substring(0, sampleLength) : text;
+            List<DetectedLanguage> sampleProbs = detect(getNarrowedDetector(candidates), sample);
+            if (sampleProbs != null && !sampleProbs.isEmpty()) {
+                DetectedLanguage top = sampleProbs.get(0);
+                String code = top.getLocale().getLanguage();
+                if (top.getProbability() >= minProb
+                        && (declared.contains(code) || recent.contains(code))) {
+                    probs = sampleProbs;
+                }
+            }
+        }
+
+        // low confidence, use all the languages on the whole text
+        if (probs == null) {
+            LOG.debug("Full language detection for {}", url);
+            if (text.length() > maxTextLength) {
+                text = text.substring(0, maxTextLength);
+            }
+            probs = detect(languageDetector, text);
+        }
+
+        if (probs == null || probs.isEmpty()) {
+            return;
+        }
+
+        for (DetectedLanguage lang : probs) {
+            if (lang.getProbability() >= minProb) {
+                m.addValue(mdKey, lang.getLocale().getLanguage());
+            }
+        }
+
+        if (host != null) {
+            String top = probs.get(0).getLocale().getLanguage();
+            ArrayDeque<String> history =
+                    hostLanguages.get(host, k -> new ArrayDeque<>(hostHistory));
+            synchronized (history) {
+                if (history.size() >= hostHistory) {
+                    history.removeFirst();
+                }
+                history.addLast(top);
+            }
+        }
+    }
+
+    private static List<DetectedLanguage> detect(LanguageDetector detector, String text) {
+        TextObject textObject = textObjectFactory.forText(text);
+        synchronized (detector) {
+            return detector.getProbabilities(textObject);
+        }
+    }
+
+    private LanguageDetector getNarrowedDetector(Set<String> languages) {
+        String key = String.join(",", languages);
+        return narrowedDetectors.get(
+                key,
+                k -> {
+                    List<LanguageProfile> profiles = new ArrayList<>();
+                    for (String lang : languages) {
+                        profiles.addAll(profilesByLanguage.getOrDefault(lang, List.of()));
+                    }
+                    return LanguageDetectorBuilder.create(NgramExtractors.standard())
+                            .withProfiles(profiles)
+                            .build();
+                });
+    }
+
+    /** Adds the normalised language code of a declared value if there is a profile for it */
+    private static void addDeclared(Set<String> declared, String value) {
+        if (StringUtils.isBlank(value)) {
+            return;
+        }
+        value = value.trim();
+        if (value.length() < 2) {
+            return;
+        }
+        String code = value.substring(0, 2).toLowerCase(Locale.ENGLISH);
+        if (profilesByLanguage.containsKey(code)) {
+            declared.add(code);
+        }
+    }
+
+    private static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.protocol.HttpHeaders;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class LanguageIDTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LanguageIDTest.class);
+
+    /** Samples of text by language */
+    private static final Map<String, String> SAMPLES = new LinkedHashMap<>();
+
+    static {
+        SAMPLES.put(
+                "en",
+                "The city council met on Tuesday evening to discuss the new budget for the public"
+                        + " library. Several residents asked why the opening hours had been reduced"
+                        + " over the summer, and the mayor promised that the reading rooms would be"
+                        + " open again on weekends from next month.");
+        SAMPLES.put(
+                "fr",
+                "Le conseil municipal s'est réuni mardi soir pour discuter du nouveau budget de la"
+                        + " bibliothèque. Plusieurs habitants ont demandé pourquoi les horaires"
+                        + " d'ouverture avaient été réduits pendant l'été, et le maire a promis que"
+                        + " les salles de lecture rouvriraient le week-end dès le mois prochain.");
+        SAMPLES.put(
+                "de",
+                "Der Stadtrat traf sich am Dienstagabend, um über den neuen Haushalt der"
+                        + " öffentlichen Bibliothek zu sprechen. Mehrere Bürger fragten, warum die"
+                        + " Öffnungszeiten im Sommer verkürzt worden waren, und der Bürgermeister"
+                        + " versprach, dass die Lesesäle ab nächstem Monat wieder am Wochenende"
+                        + " geöffnet sind.");
+        SAMPLES.put(
+                "es",
+                "El ayuntamiento se reunió el martes por la noche para hablar del nuevo"
+                        + " presupuesto de la biblioteca pública. Varios vecinos preguntaron por qué"
+                        + " se había reducido el horario durante el verano, y el alcalde prometió"
+                        + " que las salas de lectura volverían a abrir los fines de semana el mes"
+                        + " que viene.");
+        SAMPLES.put(
+                "it",
+                "Il consiglio comunale si è riunito martedì sera per discutere il nuovo bilancio"
+                        + " della biblioteca pubblica. Diversi cittadini hanno chiesto perché"
+                        + " l'orario di apertura fosse stato ridotto durante l'estate, e il sindaco"
+                        + " ha promesso che le sale di lettura riapriranno nel fine settimana dal"
+                        + " mese prossimo.");
+        SAMPLES.put(
+                "nl",
+                "De gemeenteraad kwam dinsdagavond bijeen om de nieuwe begroting van de openbare"
+                        + " bibliotheek te bespreken. Verschillende bewoners vroegen waarom de"
+                        + " openingstijden in de zomer waren ingekort, en de burgemeester beloofde"
+                        + " dat de leeszalen vanaf volgende maand weer in het weekend open zijn.");
+        SAMPLES.put(
+                "pt",
+                "A câmara municipal reuniu-se na terça-feira à noite para discutir o novo"
+                        + " orçamento da biblioteca pública. Vários moradores perguntaram por que o"
+                        + " horário de funcionamento tinha sido reduzido durante o verão, e o"
+                        + " presidente prometeu que as salas de leitura voltariam a abrir aos fins"
+                        + " de semana a partir do próximo mês.");
+        SAMPLES.put(
+                "ru",
+                "Городской совет собрался во вторник вечером, чтобы обсудить новый бюджет"
+                        + " публичной библиотеки. Несколько жителей спросили, почему летом"
+                        + " сократили часы работы, и мэр пообещал, что читальные залы снова будут"
+                        + " открыты по выходным со следующего месяца.");
+    }
+
+    /** Characters of the text scored by the fast path in the tests with mixed languages */
+    private static final int SAMPLE_LENGTH = 240;
+
+    private static LanguageID createFilter(boolean fastPath, int hostHistory) {
+        return createFilter(fastPath, hostHistory, 1000);
+    }
+
+    private static LanguageID createFilter(boolean fastPath, int hostHistory, int sampleLength) {
+        ObjectNode params = new ObjectMapper().createObjectNode();
+        params.put("key", "lang");
+        params.put("minProb", 0.9);
+        params.put("fastPath", fastPath);
+        params.put("hostHistory", hostHistory);
+        params.put("sampleLength", sampleLength);
+        LanguageID filter = new LanguageID();
+        filter.configure(new HashMap<>(), params);
+        return filter;
+    }
+
+    /**
+     * Text starting with a sample in a language followed by a lot more text in another one. Only
+     * the start is scored by the fast path whereas the full detection finds the other language.
+     */
+    private static String mixed(String lang, String other) {
+        StringBuilder text = new StringBuilder(SAMPLES.get(lang));
+        for (int i = 0; i < 10; i++) {
+            text.append(' ').append(SAMPLES.get(other));
+        }
+        return text.toString();
+    }
+
+    private static String detect(LanguageID filter, String url, String text, String declared) {
+        Metadata metadata = new Metadata();
+        if (declared != null) {
+            metadata.setValue("parse.lang", declared);
+        }
+        ParseResult parse = new ParseResult();
+        parse.set(url, metadata);
+        parse.get(url).setText(text);
+        filter.filter(url, null, null, parse);
+        return parse.get(url).getMetadata().getFirstValue("lang");
+    }
+
+    @Test
+    void testDeclaredConfirmed() {
+        LanguageID filter = createFilter(true, 20, SAMPLE_LENGTH);
+        for (String lang : SAMPLES.keySet()) {
+            String url = "http://" + lang + ".example.com/";
+            String other = "de".equals(lang) ? "en" : "de";
+            // the declared language is confirmed on the start of the text
+            Assertions.assertEquals(lang, detect(filter, url, mixed(lang, other), lang));
+            // whereas the full detection finds the other language
+            Assertions.assertEquals(other, detect(filter, url + "full", mixed(lang, other), null));
+        }
+    }
+
+    @Test
+    void testContentLanguageConfirmed() {
+        LanguageID filter = createFilter(true, 20, SAMPLE_LENGTH);
+        String url = "http://www.example.de/";
+        Metadata metadata = new Metadata();
+        metadata.setValue(HttpHeaders.CONTENT_LANGUAGE, "de-DE, en");
+        ParseResult parse = new ParseResult();
+        parse.set(url, metadata);
+        // confirmed on the start of the text, the rest is in Spanish
+        parse.get(url).setText(mixed("de", "es"));
+        filter.filter(url, null, null, parse);
+        Assertions.assertEquals("de", parse.get(url).getMetadata().getFirstValue("lang"));
+    }
+
+    @Test
+    void testDeclaredContradicted() {
+        LanguageID filter = createFilter(true, 20);
+        // wrongly declared as English
+        Assertions.assertEquals(
+                "de", detect(filter, "http://www.example.com/", SAMPLES.get("de"), "en"));
+        // the declared value is trusted without the fast path
+        LanguageID normal = createFilter(false, 20);
+        Assertions.assertEquals(
+                "en", detect(normal, "http://www.example.com/", SAMPLES.get("de"), "en"));
+    }
+
+    @Test
+    void testHostHistory() {
+        LanguageID filter = createFilter(true, 3, SAMPLE_LENGTH);
+        // not enough history yet
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(
+                    "es",
+                    detect(filter, "http://www.example.es/" + i, SAMPLES.get("es"), null));
+        }
+        // the host is known to be in Spanish, only the start of the text gets scored
+        String text = mixed("es", "de");
+        Assertions.assertEquals("es", detect(filter, "http://www.example.es/3", text, null));
+        // a page in one of the contrast languages on the same host
+        Assertions.assertEquals(
+                "ru", detect(filter, "http://www.example.es/4", SAMPLES.get("ru"), null));
+        // but the history is per host, the full detection finds German
+        Assertions.assertEquals("de", detect(filter, "http://other.example.es/", text, null));
+    }
+
+    @Test
+    void testNoHint() {
+        LanguageID filter = createFilter(true, 20);
+        for (Map.Entry<String, String> sample : SAMPLES.entrySet()) {
+            String url = "http://" + sample.getKey() + ".example.com/";
+            Assertions.assertEquals(
+                    sample.getKey(), detect(filter, url, sample.getValue(), null));
+        }
+        // the whole text is used
+        filter = createFilter(true, 20, SAMPLE_LENGTH);
+        Assertions.assertEquals(
+                "de", detect(filter, "http://www.example.com/", mixed("fr", "de"), null));
+    }
+
+    @Test
+    void testSameAsFullDetection() {
+        LanguageID normal = createFilter(false, 20);
+        LanguageID fast = createFilter(true, 3);
+        int rounds = 10;
+        int normalCorrect = 0;
+        int fastCorrect = 0;
+        long normalTime = 0;
+        long fastTime = 0;
+        for (int round = 0; round < rounds; round++) {
+            int i = 0;
+            for (Map.Entry<String, String> sample : SAMPLES.entrySet()) {
+                String url = "http://" + sample.getKey() + ".example.com/" + round;
+                // declared right, wrong or not at all
+                String declared;
+                switch (i++ % 3) {
+                    case 0:
+                        declared = sample.getKey();
+                        break;
+                    case 1:
+                        declared = "en".equals(sample.getKey()) ? "fr" : "en";
+                        break;
+                    default:
+                        declared = null;
+                        break;
+                }
+                long start = System.nanoTime();
+                // the normal path would trust the declared value
+                if (sample.getKey().equals(detect(normal, url, sample.getValue(), null))) {
+                    normalCorrect++;
+                }
+                long middle = System.nanoTime();
+                if (sample.getKey().equals(detect(fast, url, sample.getValue(), declared))) {
+                    fastCorrect++;
+                }
+                fastTime += System.nanoTime() - middle;
+                normalTime += middle - start;
+            }
+        }
+        int total = rounds * SAMPLES.size();
+        LOG.info(
+                "Accuracy normal {}/{} in {} msec, fast path {}/{} in {} msec",
+                normalCorrect,
+                total,
+                normalTime / 1000000,
+                fastCorrect,
+                total,
+                fastTime / 1000000);
+        Assertions.assertEquals(total, normalCorrect);
+        Assertions.assertEquals(normalCorrect, fastCorrect);
+    }
+}
@@ -38,6 +38,7 @@ import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.opensearch.BulkItemResponseToFailedFlag;
 import org.apache.stormcrawler.opensearch.OpenSearchConnection;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.DocumentIDGenerator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.opensearch.action.DocWriteRequest;
@@ -71,6 +72,8 @@ public class DeletionBolt extends BaseRichBolt
 
     private Cache<String, List<Tuple>> waitAck;
 
+    private DocumentIDGenerator documentIDGenerator;
+
     // Be fair due to cache timeout
     private final ReentrantLock waitAckLock = new ReentrantLock(true);
 
@@ -89,6 +92,9 @@ public class DeletionBolt extends BaseRichBolt
             indexName = ConfUtils.getString(conf, IndexerBolt.OSIndexNameParamName, "content");
         }
 
+        // same IDs as the documents indexed
+        documentIDGenerator = DocumentIDGenerator.getInstance(conf, "indexer");
+
         try {
             connection = OpenSearchConnection.getConnection(conf, BOLT_TYPE, this);
         } catch (Exception e1) {
@@ -168,10 +174,11 @@ public class DeletionBolt extends BaseRichBolt
      *
      * @param metadata The {@link Metadata}.
      * @param url The normalised url.
-     * @return Return the normalised url SHA-256 digest as String.
+     * @return Return the ID given by the {@link DocumentIDGenerator} of the indexers, by default
+     *     the normalised url SHA-256 digest as String.
      */
     protected String getDocumentID(Metadata metadata, String url) {
-        return org.apache.commons.codec.digest.DigestUtils.sha256Hex(url);
+        return documentIDGenerator.getID(metadata, url);
     }
 
     @Override
@@ -169,4 +169,9 @@ public class JSONURLFilterWrapper extends URLFilter {
             @NotNull String urlToFilter) {
         return delegatedURLFilter.filter(sourceUrl, sourceMetadata, urlToFilter);
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return delegatedURLFilter.isThreadSafe();
+    }
 }
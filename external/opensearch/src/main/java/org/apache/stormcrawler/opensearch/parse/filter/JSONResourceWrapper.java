@@ -167,4 +167,9 @@ public class JSONResourceWrapper extends ParseFilter {
     public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
         delegatedParseFilter.filter(URL, content, doc, parse);
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return delegatedParseFilter.isThreadSafe();
+    }
 }
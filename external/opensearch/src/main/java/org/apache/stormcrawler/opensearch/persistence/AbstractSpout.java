@@ -31,6 +31,7 @@ import org.apache.stormcrawler.opensearch.IndexCreation;
 import org.apache.stormcrawler.opensearch.OpenSearchConnection;
 import org.apache.stormcrawler.persistence.AbstractQueryingSpout;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.DocumentIDGenerator;
 import org.opensearch.client.RestHighLevelClient;
 import org.opensearch.search.SearchHit;
 import org.slf4j.Logger;
@@ -98,6 +99,9 @@ public abstract class AbstractSpout extends AbstractQueryingSpout {
 
     protected int queryTimeout = -1;
 
+    /** Metadata key to put the ID of the documents in, if any */
+    protected String documentIDMetadataKey;
+
     @Override
     public void open(
             Map<String, Object> stormConf,
@@ -175,6 +179,12 @@ public abstract class AbstractSpout extends AbstractQueryingSpout {
         queryTimeout = ConfUtils.getInt(stormConf, OSStatusQueryTimeoutParamName, -1);
 
         filterQueries = ConfUtils.loadListFromConf(OSStatusFilterParamName, stormConf);
+
+        // the IDs of the status index, used by the status updaters only
+        documentIDMetadataKey =
+                ConfUtils.getString(
+                        stormConf,
+                        "status.updater." + DocumentIDGenerator.documentIDMetadataKeyParamName);
     }
 
     /** Builds a query and use it retrieve the results from OS * */
@@ -187,7 +197,19 @@ public abstract class AbstractSpout extends AbstractQueryingSpout {
         if (beingProcessed.containsKey(url)) {
             return false;
         }
-        return buffer.add(url, fromKeyValues(keyValues));
+        return addToBuffer(url, fromHit(hit, keyValues));
+    }
+
+    /**
+     * Returns the metadata of a hit, with its ID if the status updater needs it to keep updating
+     * the same document
+     */
+    protected final Metadata fromHit(SearchHit hit, Map<String, Object> keyValues) {
+        Metadata metadata = fromKeyValues(keyValues);
+        if (documentIDMetadataKey != null) {
+            metadata.setValue(documentIDMetadataKey, hit.getId());
+        }
+        return metadata;
     }
 
     protected final Metadata fromKeyValues(Map<String, Object> keyValues) {
@@ -228,6 +250,7 @@ public abstract class AbstractSpout extends AbstractQueryingSpout {
 
     @Override
     public void close() {
+        super.close();
         if (client != null)
             try {
                 client.close();
@@ -262,10 +262,10 @@ public class AggregationSpout extends AbstractSpout implements ActionListener<Se
                     continue;
                 }
 
-                Metadata metadata = fromKeyValues(keyValues);
-                boolean added = buffer.add(url, metadata);
+                Metadata metadata = fromHit(hit, keyValues);
+                boolean added = addToBuffer(url, metadata);
                 if (!added) {
-                    LOG.debug("{} -> already in buffer: {}", logIdprefix, url);
+                    LOG.debug("{} -> already in buffer or processed: {}", logIdprefix, url);
                     alreadyprocessed++;
                     continue;
                 }
@@ -99,6 +99,7 @@ public class SolrSpout extends AbstractQueryingSpout {
 
     @Override
     public void close() {
+        super.close();
         if (connection != null) {
             try {
                 connection.close();
@@ -227,7 +228,7 @@ public class SolrSpout extends AbstractQueryingSpout {
                     }
                 }
 
-                buffer.add(url, metadata);
+                addToBuffer(url, metadata);
             }
 
             LOG.info(
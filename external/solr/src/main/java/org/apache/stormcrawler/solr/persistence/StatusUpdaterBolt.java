@@ -16,8 +16,10 @@
  */
 package org.apache.stormcrawler.solr.persistence;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
@@ -68,6 +70,33 @@ public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
             String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple t)
             throws Exception {
 
+        connection.getClient().add(toDocument(url, status, metadata, nextFetch));
+
+        super.ack(t, url);
+    }
+
+    @Override
+    protected boolean supportsBatch() {
+        return true;
+    }
+
+    @Override
+    protected void storeBatch(List<StatusUpdate> updates) throws Exception {
+        List<SolrInputDocument> docs = new ArrayList<>(updates.size());
+        for (StatusUpdate update : updates) {
+            docs.add(
+                    toDocument(
+                            update.getURL(),
+                            update.getStatus(),
+                            update.getMetadata(),
+                            update.getNextFetch()));
+        }
+        connection.getClient().add(docs);
+    }
+
+    private SolrInputDocument toDocument(
+            String url, Status status, Metadata metadata, Optional<Date> nextFetch) {
+
         SolrInputDocument doc = new SolrInputDocument();
 
         doc.setField("url", url);
@@ -87,9 +116,7 @@ public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
             doc.setField("nextFetchDate", nextFetch.get());
         }
 
-        connection.getClient().add(doc);
-
-        super.ack(t, url);
+        return doc;
     }
 
     @Override
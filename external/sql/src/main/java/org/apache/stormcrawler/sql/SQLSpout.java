@@ -176,7 +176,7 @@ public class SQLSpout extends AbstractQueryingSpout {
                 String URLMD = url + metadata;
                 List<Object> v =
                         SCHEME.deserialize(ByteBuffer.wrap(URLMD.getBytes(StandardCharsets.UTF_8)));
-                buffer.add(url, (Metadata) v.get(1));
+                addToBuffer(url, (Metadata) v.get(1));
             }
 
             // no results? reset the date
@@ -20,13 +20,23 @@ import static org.apache.stormcrawler.Constants.StatusStreamName;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import org.apache.commons.lang.StringUtils;
 import org.apache.html.dom.HTMLDocumentImpl;
 import org.apache.storm.metric.api.MultiCountMetric;
@@ -54,26 +64,63 @@ import org.apache.stormcrawler.util.MetadataTransfer;
 import org.apache.stormcrawler.util.URLUtil;
 import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.fork.ForkParser;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ParserDecorator;
 import org.apache.tika.parser.html.HtmlMapper;
 import org.apache.tika.parser.html.IdentityHtmlMapper;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.Link;
 import org.apache.tika.sax.LinkContentHandler;
 import org.apache.tika.sax.TeeContentHandler;
+import org.apache.tika.sax.ToTextContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 import org.apache.tika.sax.XHTMLContentHandler;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DocumentFragment;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 
-/** Uses Tika to parse the output of a fetch and extract text + metadata */
+/**
+ * Uses Tika to parse the output of a fetch and extract text + metadata.
+ *
+ * <p>When <i>parser.tika.timeout</i> is set, the documents are parsed by a pool of threads and the
+ * ones taking longer than the timeout are sent to the status stream as ERROR instead of blocking
+ * the executor. With <i>parser.tika.fork</i>, the parsing is done in separate JVMs which are
+ * restarted if they crash, run out of memory or exceed the timeout.
+ */
 public class ParserBolt extends BaseRichBolt {
 
     private Tika tika;
 
+    /** Parser used for the documents, the one from Tika or a ForkParser */
+    private Parser parser;
+
+    private ForkParser forkParser;
+
+    /** Time in msec allowed for parsing a document, -1 for no limit */
+    private long parseTimeout = -1;
+
+    /** Pool of threads parsing the documents or null if they are parsed by the executor thread */
+    private ThreadPoolExecutor parsingPool;
+
+    private int numThreads = 1;
+
+    /** Threads of the pool still running a document which timed out */
+    private AtomicInteger stuckThreads;
+
+    private String threadNamePrefix;
+
+    /** Documents larger than this number of bytes are not parsed, -1 for no limit */
+    private int maxContentLength = -1;
+
+    /** Max number of characters of text kept for a document, -1 for no limit */
+    private int maxTextLength = -1;
+
     private URLFilters urlFilters = null;
     private ParseFilter parseFilters = null;
 
@@ -86,13 +133,16 @@ public class ParserBolt extends BaseRichBolt {
     private boolean upperCaseElementNames = true;
     private Class<? extends HtmlMapper> htmlMapperClass = IdentityHtmlMapper.class;
 
+    /** Shared by all the documents, the mappers must not keep any state */
+    private HtmlMapper htmlMapper;
+
     private boolean extractEmbedded = false;
 
     private MetadataTransfer metadataTransfer;
     private boolean emitOutlinks = true;
 
     /** regular expressions to apply to the mime-type * */
-    private List<String> mimeTypeWhiteList = new LinkedList<>();
+    private List<Pattern> mimeTypeWhiteList = new ArrayList<>();
 
     private String protocolMDprefix;
 
@@ -125,11 +175,48 @@ public class ParserBolt extends BaseRichBolt {
             throw e;
         }
 
-        mimeTypeWhiteList = ConfUtils.loadListFromConf("parser.mimetype.whitelist", conf);
+        try {
+            htmlMapper = InitialisationUtil.initializeFromClass(htmlMapperClass);
+        } catch (Exception e) {
+            LOG.error("Exception while instantiating HTMLMapper {}", htmlmapperClassName, e);
+        }
+
+        for (String mt : ConfUtils.loadListFromConf("parser.mimetype.whitelist", conf)) {
+            mimeTypeWhiteList.add(Pattern.compile(mt));
+        }
 
         protocolMDprefix = ConfUtils.getString(conf, ProtocolResponse.PROTOCOL_MD_PREFIX_PARAM, "");
 
         tika = instantiateTika(conf);
+        parser = tika.getParser();
+
+        parseTimeout = ConfUtils.getLong(conf, "parser.tika.timeout", -1L);
+        numThreads = Math.max(1, ConfUtils.getInt(conf, "parser.tika.threads.number", 1));
+        maxContentLength = ConfUtils.getInt(conf, "parser.tika.max.content.length", -1);
+        maxTextLength = ConfUtils.getInt(conf, "parser.tika.max.text.length", -1);
+
+        if (ConfUtils.getBoolean(conf, "parser.tika.fork", false)) {
+            forkParser =
+                    new ForkParser(
+                            getClass().getClassLoader(),
+                            new ForkedParser(parser, htmlMapperClass, extractEmbedded));
+            forkParser.setPoolSize(numThreads);
+            forkParser.setJavaCommand(getForkJavaCommand(conf));
+            int maxFiles = ConfUtils.getInt(conf, "parser.tika.fork.max.files", -1);
+            if (maxFiles > 0) {
+                forkParser.setMaxFilesProcessedPerServer(maxFiles);
+            }
+            if (parseTimeout > 0) {
+                // the forked JVM gets killed if it takes longer
+                forkParser.setServerParseTimeoutMillis(parseTimeout);
+            }
+            parser = forkParser;
+        }
+
+        if (parseTimeout > 0) {
+            threadNamePrefix = "TikaParser #" + context.getThisTaskId() + " - ";
+            parsingPool = newParsingPool();
+        }
 
         this.collector = collector;
 
@@ -158,8 +245,8 @@ public class ParserBolt extends BaseRichBolt {
                 mimeType = metadata.getFirstValue(HttpHeaders.CONTENT_TYPE, this.protocolMDprefix);
             }
             if (mimeType != null) {
-                for (String mt : mimeTypeWhiteList) {
-                    if (mimeType.matches(mt)) {
+                for (Pattern mt : mimeTypeWhiteList) {
+                    if (mt.matcher(mimeType).matches()) {
                         mt_match = true;
                         break;
                     }
@@ -181,6 +268,11 @@ public class ParserBolt extends BaseRichBolt {
             return;
         }
 
+        if (maxContentLength > 0 && content.length > maxContentLength) {
+            handleException(url, null, metadata, tuple, "content too large");
+            return;
+        }
+
         long start = System.currentTimeMillis();
 
         ByteArrayInputStream bais = new ByteArrayInputStream(content);
@@ -194,27 +286,40 @@ public class ParserBolt extends BaseRichBolt {
         }
 
         // as well as the filename
+        final URL sourceUrl;
         try {
-            URL _url = new URL(url);
-            md.set(TikaCoreProperties.RESOURCE_NAME_KEY, _url.getFile());
+            sourceUrl = new URL(url);
         } catch (MalformedURLException e1) {
             throw new IllegalStateException("Malformed URL", e1);
         }
+        md.set(TikaCoreProperties.RESOURCE_NAME_KEY, sourceUrl.getFile());
 
+        ParseContext parseContext = new ParseContext();
         LinkContentHandler linkHandler = new LinkContentHandler();
-        ContentHandler textHandler = new BodyContentHandler(-1);
+        ContentHandler textHandler;
+        if (maxTextLength > 0) {
+            // stops collecting the text without interrupting the parsing
+            textHandler =
+                    new BodyContentHandler(
+                            new WriteOutContentHandler(
+                                    new ToTextContentHandler(),
+                                    maxTextLength,
+                                    false,
+                                    parseContext));
+        } else {
+            textHandler = new BodyContentHandler(-1);
+        }
         TeeContentHandler teeHandler = new TeeContentHandler(linkHandler, textHandler);
-        ParseContext parseContext = new ParseContext();
 
-        if (extractEmbedded) {
-            parseContext.set(Parser.class, tika.getParser());
-        }
+        // done in the forked JVM otherwise
+        if (forkParser == null) {
+            if (extractEmbedded) {
+                parseContext.set(Parser.class, tika.getParser());
+            }
 
-        try {
-            parseContext.set(
-                    HtmlMapper.class, InitialisationUtil.initializeFromClass(htmlMapperClass));
-        } catch (Exception e) {
-            LOG.error("Exception while specifying HTMLMapper {}", url, e);
+            if (htmlMapper != null) {
+                parseContext.set(HtmlMapper.class, htmlMapper);
+            }
         }
 
         // build a DOM if required by the parseFilters
@@ -232,8 +337,18 @@ public class ParserBolt extends BaseRichBolt {
         // parse
         String text;
         try {
-            tika.getParser().parse(bais, teeHandler, md, parseContext);
+            parse(bais, teeHandler, md, parseContext);
             text = textHandler.toString();
+        } catch (TimeoutException e) {
+            handleException(url, null, metadata, tuple, "parse timeout");
+            return;
+        } catch (ExecutionException e) {
+            handleException(url, e.getCause(), metadata, tuple, "parse error");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handleException(url, e, metadata, tuple, "parse error");
+            return;
         } catch (Throwable e) {
             handleException(url, e, metadata, tuple, "parse error");
             return;
@@ -256,7 +371,7 @@ public class ParserBolt extends BaseRichBolt {
         LOG.info("Parsed {} in {} msec", url, duration);
 
         // filter and convert the outlinks
-        List<Outlink> outlinks = toOutlinks(url, linkHandler.getLinks(), metadata);
+        List<Outlink> outlinks = toOutlinks(url, sourceUrl, linkHandler.getLinks(), metadata);
 
         ParseResult parse = new ParseResult(outlinks);
 
@@ -303,6 +418,104 @@ public class ParserBolt extends BaseRichBolt {
         eventCounter.scope("tuple_success").incrBy(1);
     }
 
+    /**
+     * Parses a document with the parser on the executor thread or, if a timeout is set, with one of
+     * the threads of the pool.
+     *
+     * @throws TimeoutException if the parsing took longer than the timeout
+     * @throws ExecutionException if the parsing failed in a thread of the pool
+     */
+    private void parse(
+            InputStream stream,
+            ContentHandler handler,
+            org.apache.tika.metadata.Metadata md,
+            ParseContext parseContext)
+            throws Exception {
+        if (parsingPool == null) {
+            parser.parse(stream, handler, md, parseContext);
+            return;
+        }
+
+        // all the threads are still busy with documents which timed out
+        if (stuckThreads.get() >= numThreads) {
+            LOG.warn(
+                    "{} parsing threads stuck on documents which timed out, starting new ones",
+                    numThreads);
+            parsingPool.shutdownNow();
+            parsingPool = newParsingPool();
+            eventCounter.scope("parsing_pool_reset").incrBy(1);
+        }
+
+        // set by the thread finishing the parsing or by this one when the timeout is reached,
+        // whichever comes first
+        final AtomicBoolean over = new AtomicBoolean();
+        final AtomicInteger stuck = stuckThreads;
+        Future<?> future =
+                parsingPool.submit(
+                        () -> {
+                            try {
+                                parser.parse(stream, handler, md, parseContext);
+                            } finally {
+                                if (!over.compareAndSet(false, true)) {
+                                    // had been counted as stuck
+                                    stuck.decrementAndGet();
+                                }
+                            }
+                            return null;
+                        });
+        try {
+            future.get(parseTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // the thread carries on until the parser checks whether it got interrupted
+            future.cancel(true);
+            if (over.compareAndSet(false, true)) {
+                stuck.incrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Command used for starting the forked JVMs, either as a list of arguments or as a single
+     * string which gets split on whitespace.
+     */
+    private static List<String> getForkJavaCommand(Map<String, Object> conf) {
+        List<String> command = ConfUtils.loadListFromConf("parser.tika.fork.java.command", conf);
+        if (command.isEmpty()) {
+            return Arrays.asList("java", "-Xmx512m", "-Djava.awt.headless=true");
+        }
+        if (command.size() == 1) {
+            return Arrays.asList(StringUtils.split(command.get(0)));
+        }
+        return command;
+    }
+
+    private ThreadPoolExecutor newParsingPool() {
+        stuckThreads = new AtomicInteger();
+        final AtomicInteger threadNum = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                numThreads,
+                numThreads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, threadNamePrefix + threadNum.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @Override
+    public void cleanup() {
+        if (parsingPool != null) {
+            parsingPool.shutdownNow();
+        }
+        if (forkParser != null) {
+            forkParser.close();
+        }
+    }
+
     private Tika instantiateTika(Map<String, Object> conf) {
         Tika tika = null;
         String tikaConfigFile =
@@ -357,21 +570,57 @@ public class ParserBolt extends BaseRichBolt {
         declarer.declareStream(StatusStreamName, new Fields("url", "metadata", "status"));
     }
 
-    private List<Outlink> toOutlinks(String parentURL, List<Link> links, Metadata parentMetadata) {
+    /**
+     * Sets the HtmlMapper and the parser for the embedded documents within the forked JVM, as the
+     * objects in the ParseContext given to the ForkParser must be serializable.
+     */
+    private static class ForkedParser extends ParserDecorator {
 
-        Map<String, Outlink> outlinks = new HashMap<>();
+        private static final long serialVersionUID = 1L;
 
-        URL url_;
-        try {
-            url_ = new URL(parentURL);
-        } catch (MalformedURLException e1) {
-            // we would have known by now as previous
-            // components check whether the URL is valid
-            LOG.error("MalformedURLException on {}", parentURL);
-            eventCounter.scope("error_invalid_source_url").incrBy(1);
-            return new ArrayList<>();
+        private final Class<? extends HtmlMapper> htmlMapperClass;
+
+        private final boolean extractEmbedded;
+
+        /** Instantiated once within the forked JVM */
+        private transient HtmlMapper htmlMapper;
+
+        ForkedParser(
+                Parser parser,
+                Class<? extends HtmlMapper> htmlMapperClass,
+                boolean extractEmbedded) {
+            super(parser);
+            this.htmlMapperClass = htmlMapperClass;
+            this.extractEmbedded = extractEmbedded;
         }
 
+        @Override
+        public void parse(
+                InputStream stream,
+                ContentHandler handler,
+                org.apache.tika.metadata.Metadata metadata,
+                ParseContext context)
+                throws IOException, SAXException, TikaException {
+            if (extractEmbedded) {
+                context.set(Parser.class, getWrappedParser());
+            }
+            if (htmlMapper == null) {
+                try {
+                    htmlMapper = htmlMapperClass.getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    throw new TikaException("Can't instantiate " + htmlMapperClass.getName(), e);
+                }
+            }
+            context.set(HtmlMapper.class, htmlMapper);
+            super.parse(stream, handler, metadata, context);
+        }
+    }
+
+    private List<Outlink> toOutlinks(
+            String parentURL, URL url_, List<Link> links, Metadata parentMetadata) {
+
+        Map<String, Outlink> outlinks = new HashMap<>();
+
         for (Link l : links) {
             if (StringUtils.isBlank(l.getUri())) {
                 continue;
@@ -20,6 +20,9 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -105,4 +108,95 @@ class ParserBoltTest extends ParsingTester {
         outTuples = output.getEmitted();
         Assertions.assertEquals(1, outTuples.size());
     }
+
+    @Test
+    void testTimeout() throws IOException {
+        Map conf = new HashMap();
+        conf.put("parser.tika.config.file", "tika-config-slow.xml");
+        conf.put("parser.tika.timeout", 500);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        Metadata metadata = new Metadata();
+        metadata.addValue(HttpHeaders.CONTENT_TYPE, "text/plain");
+        long start = System.currentTimeMillis();
+        parse(
+                "http://thisisatest.com/slow.txt",
+                "sleep forever".getBytes(StandardCharsets.UTF_8),
+                metadata);
+        Assertions.assertTrue(System.currentTimeMillis() - start < 10000);
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statusTuples.size());
+        Assertions.assertEquals(Status.ERROR, statusTuples.get(0).get(2));
+        Assertions.assertEquals(
+                "parse timeout",
+                ((Metadata) statusTuples.get(0).get(1))
+                        .getFirstValue(Constants.STATUS_ERROR_MESSAGE));
+        Assertions.assertEquals(1, output.getAckedTuples().size());
+        Assertions.assertTrue(output.getEmitted().isEmpty());
+
+        // the next documents get parsed
+        metadata = new Metadata();
+        metadata.addValue(HttpHeaders.CONTENT_TYPE, "text/plain");
+        parse(
+                "http://thisisatest.com/fast.txt",
+                "nothing to wait for".getBytes(StandardCharsets.UTF_8),
+                metadata);
+        List<List<Object>> outTuples = output.getEmitted();
+        Assertions.assertEquals(1, outTuples.size());
+        Assertions.assertEquals("nothing to wait for", outTuples.get(0).get(3).toString().trim());
+    }
+
+    @Test
+    void testMaxContentLength() throws IOException {
+        Map conf = new HashMap();
+        conf.put("parser.tika.max.content.length", 1024);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        parse(
+                "http://www.digitalpebble.com/test_recursive_embedded.docx",
+                "test_recursive_embedded.docx");
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statusTuples.size());
+        Assertions.assertEquals(Status.ERROR, statusTuples.get(0).get(2));
+        Assertions.assertTrue(output.getEmitted().isEmpty());
+    }
+
+    @Test
+    void testMaxTextLength() throws IOException {
+        Map conf = new HashMap();
+        conf.put("parser.extract.embedded", true);
+        conf.put("parser.tika.max.text.length", 20);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        parse(
+                "http://www.digitalpebble.com/test_recursive_embedded.docx",
+                "test_recursive_embedded.docx");
+        List<List<Object>> outTuples = output.getEmitted();
+        Assertions.assertEquals(1, outTuples.size());
+        Assertions.assertTrue(outTuples.get(0).get(3).toString().length() <= 20);
+    }
+
+    @Test
+    void testFork() throws IOException {
+        Map conf = new HashMap();
+        conf.put("parser.extract.embedded", true);
+        conf.put("parser.tika.fork", true);
+        // the same JVM as the one running the tests rather than whichever is on the path
+        conf.put(
+                "parser.tika.fork.java.command",
+                Arrays.asList(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-Xmx256m",
+                        "-Djava.awt.headless=true"));
+        conf.put("parser.tika.timeout", 60000);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        parse(
+                "http://www.digitalpebble.com/test_recursive_embedded.docx",
+                "test_recursive_embedded.docx");
+        List<List<Object>> outTuples = output.getEmitted();
+        Assertions.assertEquals(1, outTuples.size());
+        Assertions.assertTrue(
+                outTuples
+                        .get(0)
+                        .get(3)
+                        .toString()
+                        .contains("Life, Liberty and the pursuit of Happiness"));
+    }
 }